@@ -0,0 +1,79 @@
+package org.auwerk.otus.arch.orderservice.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.auwerk.otus.arch.orderservice.domain.Order;
+import org.auwerk.otus.arch.orderservice.domain.OrderPosition;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatus;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatusChange;
+
+/**
+ * Генерация тестовых данных для бенчмарков
+ */
+public final class BenchmarkData {
+
+    public static final String USERNAME = "customer";
+
+    private BenchmarkData() {
+    }
+
+    public static List<Order> orders(int orderCount) {
+        final var orders = new ArrayList<Order>(orderCount);
+        final var createdAt = LocalDateTime.now();
+        for (int i = 0; i < orderCount; i++) {
+            orders.add(Order.builder()
+                    .id(UUID.randomUUID())
+                    .userName(USERNAME)
+                    .status(OrderStatus.PLACED)
+                    .createdAt(createdAt.minusMinutes(i))
+                    .updatedAt(createdAt)
+                    .build());
+        }
+        return orders;
+    }
+
+    public static List<OrderPosition> positions(UUID orderId, int positionCount) {
+        final var positions = new ArrayList<OrderPosition>(positionCount);
+        for (int i = 0; i < positionCount; i++) {
+            positions.add(OrderPosition.builder()
+                    .id(UUID.randomUUID())
+                    .orderId(orderId)
+                    .productCode("PRODUCT" + i)
+                    .quantity(i % 5 + 1)
+                    .price(BigDecimal.valueOf(100 + i, 2))
+                    .build());
+        }
+        return positions;
+    }
+
+    public static List<OrderStatusChange> statusChanges(UUID orderId) {
+        final var createdAt = LocalDateTime.now();
+        return List.of(
+                OrderStatusChange.builder()
+                        .orderId(orderId)
+                        .status(OrderStatus.PLACED)
+                        .createdAt(createdAt)
+                        .build(),
+                OrderStatusChange.builder()
+                        .orderId(orderId)
+                        .status(OrderStatus.CREATED)
+                        .createdAt(createdAt.minusMinutes(1))
+                        .build());
+    }
+
+    /**
+     * Заказы с заполненными позициями и историей статусов
+     */
+    public static List<Order> fullOrders(int orderCount, int positionCount) {
+        final var orders = orders(orderCount);
+        orders.forEach(order -> {
+            order.setPositions(positions(order.getId(), positionCount));
+            order.setStatusChanges(statusChanges(order.getId()));
+        });
+        return orders;
+    }
+}
@@ -0,0 +1,34 @@
+package org.auwerk.otus.arch.orderservice.benchmark;
+
+import java.util.List;
+import java.util.Map;
+
+import io.vertx.sqlclient.impl.ArrayTuple;
+
+/**
+ * Строка результата запроса, собранная в памяти без обращения к БД
+ */
+public class BenchmarkRow extends ArrayTuple implements io.vertx.sqlclient.Row {
+
+    private final List<String> columnNames;
+
+    private BenchmarkRow(List<String> columnNames, List<Object> values) {
+        super(values);
+        this.columnNames = columnNames;
+    }
+
+    public static io.vertx.mutiny.sqlclient.Row of(Map<String, Object> columns) {
+        return io.vertx.mutiny.sqlclient.Row.newInstance(
+                new BenchmarkRow(List.copyOf(columns.keySet()), List.copyOf(columns.values())));
+    }
+
+    @Override
+    public String getColumnName(int pos) {
+        return columnNames.get(pos);
+    }
+
+    @Override
+    public int getColumnIndex(String columnName) {
+        return columnNames.indexOf(columnName);
+    }
+}
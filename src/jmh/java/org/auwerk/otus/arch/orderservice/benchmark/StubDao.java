@@ -0,0 +1,33 @@
+package org.auwerk.otus.arch.orderservice.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Заглушка DAO, отвечающая заранее заданными результатами без обращения к БД
+ */
+public final class StubDao {
+
+    private StubDao() {
+    }
+
+    /**
+     * @param daoInterface интерфейс DAO
+     * @param handlers     обработчики методов по их именам, принимающие аргументы
+     *                     вызова
+     * @return реализация DAO, бросающая {@link UnsupportedOperationException}
+     *         для методов без обработчика
+     */
+    public static <T> T of(Class<T> daoInterface, Map<String, Function<Object[], Object>> handlers) {
+        return daoInterface.cast(Proxy.newProxyInstance(daoInterface.getClassLoader(),
+                new Class<?>[] { daoInterface },
+                (proxy, method, args) -> {
+                    final var handler = handlers.get(method.getName());
+                    if (handler == null) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    return handler.apply(args);
+                }));
+    }
+}
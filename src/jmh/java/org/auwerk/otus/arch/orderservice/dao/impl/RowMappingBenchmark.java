@@ -0,0 +1,79 @@
+package org.auwerk.otus.arch.orderservice.dao.impl;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.auwerk.otus.arch.orderservice.benchmark.BenchmarkRow;
+import org.auwerk.otus.arch.orderservice.domain.Order;
+import org.auwerk.otus.arch.orderservice.domain.OrderPosition;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatus;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatusChange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import io.vertx.mutiny.sqlclient.Row;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RowMappingBenchmark {
+
+    private Row orderRow;
+    private Row positionRow;
+    private Row statusChangeRow;
+
+    @Setup
+    public void setUp() {
+        final var orderId = UUID.randomUUID();
+        final var now = LocalDateTime.now();
+
+        final var orderColumns = new LinkedHashMap<String, Object>();
+        orderColumns.put("id", orderId);
+        orderColumns.put("username", "customer");
+        orderColumns.put("status", OrderStatus.PLACED.name());
+        orderColumns.put("created_at", now);
+        orderColumns.put("updated_at", now);
+        orderColumns.put("version", 0L);
+        orderColumns.put("total_amount", BigDecimal.valueOf(160));
+        orderColumns.put("position_count", 1);
+        orderRow = BenchmarkRow.of(orderColumns);
+
+        final var positionColumns = new LinkedHashMap<String, Object>();
+        positionColumns.put("id", UUID.randomUUID());
+        positionColumns.put("order_id", orderId);
+        positionColumns.put("product_code", "PRODUCT1");
+        positionColumns.put("quantity", 16L);
+        positionColumns.put("price", BigDecimal.TEN);
+        positionRow = BenchmarkRow.of(positionColumns);
+
+        final var statusChangeColumns = new LinkedHashMap<String, Object>();
+        statusChangeColumns.put("id", UUID.randomUUID());
+        statusChangeColumns.put("order_id", orderId);
+        statusChangeColumns.put("status", OrderStatus.PLACED.name());
+        statusChangeColumns.put("created_at", now);
+        statusChangeRow = BenchmarkRow.of(statusChangeColumns);
+    }
+
+    @Benchmark
+    public Order mapOrderRow() {
+        return OrderDaoImpl.mapRow(orderRow);
+    }
+
+    @Benchmark
+    public OrderPosition mapOrderPositionRow() {
+        return OrderPositionDaoImpl.mapRow(positionRow);
+    }
+
+    @Benchmark
+    public OrderStatusChange mapOrderStatusChangeRow() {
+        return OrderStatusChangeDaoImpl.mapRow(statusChangeRow);
+    }
+}
@@ -0,0 +1,63 @@
+package org.auwerk.otus.arch.orderservice.mapper;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.auwerk.otus.arch.orderservice.api.dto.OrderDto;
+import org.auwerk.otus.arch.orderservice.benchmark.BenchmarkData;
+import org.auwerk.otus.arch.orderservice.domain.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OrderMapperBenchmark {
+
+    @Param({ "10", "50" })
+    int ordersPerPage;
+
+    @Param({ "1", "10", "100" })
+    int positionsPerOrder;
+
+    private OrderMapper orderMapper;
+    private ObjectMapper objectMapper;
+    private List<Order> orders;
+    private List<OrderDto> orderDtos;
+
+    @Setup
+    public void setUp() {
+        orderMapper = new OrderMapperImpl(new OrderPositionMapperImpl(), new OrderStatusChangeMapperImpl());
+        objectMapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        orders = BenchmarkData.fullOrders(ordersPerPage, positionsPerOrder);
+        orderDtos = orderMapper.toDtos(orders);
+    }
+
+    @Benchmark
+    public List<OrderDto> toDtos() {
+        return orderMapper.toDtos(orders);
+    }
+
+    @Benchmark
+    public byte[] serializeDtos() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(orderDtos);
+    }
+
+    @Benchmark
+    public byte[] mapAndSerialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(orderMapper.toDtos(orders));
+    }
+}
@@ -0,0 +1,38 @@
+package org.auwerk.otus.arch.orderservice.service.impl;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.auwerk.otus.arch.orderservice.benchmark.BenchmarkData;
+import org.auwerk.otus.arch.orderservice.domain.OrderPosition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CalculateTotalBenchmark {
+
+    @Param({ "1", "10", "100", "1000" })
+    int positionsPerOrder;
+
+    private List<OrderPosition> positions;
+
+    @Setup
+    public void setUp() {
+        positions = BenchmarkData.positions(UUID.randomUUID(), positionsPerOrder);
+    }
+
+    @Benchmark
+    public BigDecimal calculateTotal() {
+        return OrderServiceImpl.calculateTotal(positions);
+    }
+}
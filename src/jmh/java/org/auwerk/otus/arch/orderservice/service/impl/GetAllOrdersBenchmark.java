@@ -0,0 +1,103 @@
+package org.auwerk.otus.arch.orderservice.service.impl;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.auwerk.otus.arch.orderservice.api.dto.OrderDto;
+import org.auwerk.otus.arch.orderservice.api.dto.OrderSummaryDto;
+import org.auwerk.otus.arch.orderservice.benchmark.BenchmarkData;
+import org.auwerk.otus.arch.orderservice.benchmark.StubDao;
+import org.auwerk.otus.arch.orderservice.dao.OrderDao;
+import org.auwerk.otus.arch.orderservice.dao.OrderPositionDao;
+import org.auwerk.otus.arch.orderservice.dao.OrderStatusChangeDao;
+import org.auwerk.otus.arch.orderservice.domain.Order;
+import org.auwerk.otus.arch.orderservice.domain.OrderDetail;
+import org.auwerk.otus.arch.orderservice.domain.OrderPosition;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatusChange;
+import org.auwerk.otus.arch.orderservice.mapper.OrderMapper;
+import org.auwerk.otus.arch.orderservice.mapper.OrderMapperImpl;
+import org.auwerk.otus.arch.orderservice.mapper.OrderPositionMapperImpl;
+import org.auwerk.otus.arch.orderservice.mapper.OrderStatusChangeMapperImpl;
+import org.auwerk.otus.arch.orderservice.metrics.MetricsRecorder;
+import org.auwerk.otus.arch.orderservice.service.OrderService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.security.runtime.QuarkusPrincipal;
+import io.quarkus.security.runtime.QuarkusSecurityIdentity;
+import io.smallrye.mutiny.Uni;
+
+/**
+ * Полный конвейер получения страницы заказов: выборка, сборка агрегатов и
+ * маппинг в DTO, с DAO-заглушками вместо БД
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GetAllOrdersBenchmark {
+
+    private static final Set<OrderDetail> ALL_DETAILS = EnumSet.allOf(OrderDetail.class);
+    private static final Set<OrderDetail> NO_DETAILS = EnumSet.noneOf(OrderDetail.class);
+
+    @Param({ "10", "50" })
+    int ordersPerPage;
+
+    @Param({ "1", "10", "100" })
+    int positionsPerOrder;
+
+    private OrderService orderService;
+    private OrderMapper orderMapper;
+
+    @Setup
+    public void setUp() {
+        final var orders = BenchmarkData.orders(ordersPerPage);
+        final var positions = new ArrayList<OrderPosition>();
+        final var statusChanges = new ArrayList<OrderStatusChange>();
+        orders.forEach(order -> {
+            positions.addAll(BenchmarkData.positions(order.getId(), positionsPerOrder));
+            statusChanges.addAll(BenchmarkData.statusChanges(order.getId()));
+        });
+
+        final var orderDao = StubDao.of(OrderDao.class, Map.of(
+                "findAllByUserName", args -> Uni.createFrom().item(orders)));
+        final var positionDao = StubDao.of(OrderPositionDao.class, Map.of(
+                "findAllByOrderIds", args -> Uni.createFrom().item(positions)));
+        final var statusChangeDao = StubDao.of(OrderStatusChangeDao.class, Map.of(
+                "findAllByOrderIds", args -> Uni.createFrom().item(statusChanges)));
+        final var securityIdentity = QuarkusSecurityIdentity.builder()
+                .setPrincipal(new QuarkusPrincipal(BenchmarkData.USERNAME))
+                .build();
+
+        orderService = new OrderServiceImpl(null, orderDao, positionDao, statusChangeDao, null,
+                securityIdentity, null, null, null, new MetricsRecorder(new SimpleMeterRegistry()), null, null,
+                null);
+        orderMapper = new OrderMapperImpl(new OrderPositionMapperImpl(), new OrderStatusChangeMapperImpl());
+    }
+
+    @Benchmark
+    public List<Order> getAllOrders() {
+        return orderService.getAllOrders(ordersPerPage, 1, ALL_DETAILS).await().indefinitely();
+    }
+
+    @Benchmark
+    public List<OrderDto> getAllOrdersMapped() {
+        return orderMapper.toDtos(orderService.getAllOrders(ordersPerPage, 1, ALL_DETAILS).await().indefinitely());
+    }
+
+    @Benchmark
+    public List<OrderSummaryDto> getAllOrdersSummary() {
+        return orderMapper.toSummaryDtos(orderService.getAllOrders(ordersPerPage, 1, NO_DETAILS).await()
+                .indefinitely());
+    }
+}
@@ -0,0 +1,75 @@
+package org.auwerk.otus.arch.orderservice.api;
+
+import java.util.function.Supplier;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.auwerk.otus.arch.orderservice.domain.IdempotentResponse;
+import org.auwerk.otus.arch.orderservice.exception.IdempotencyKeyInProgressException;
+import org.auwerk.otus.arch.orderservice.exception.IdempotencyKeyMismatchException;
+import org.auwerk.otus.arch.orderservice.service.IdempotencyService;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.smallrye.mutiny.Uni;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Обработка заголовка Idempotency-Key: запрос с ключом выполняется один раз,
+ * повтор получает тот же код ответа и тело
+ */
+@ApplicationScoped
+@RequiredArgsConstructor
+public class IdempotentRequestHandler {
+
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    protected static final int MAX_KEY_LENGTH = 255;
+    protected static final int UNPROCESSABLE_ENTITY = 422;
+
+    private final IdempotencyService idempotencyService;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Выполнение запроса с учетом ключа идемпотентности; без ключа запрос
+     * выполняется как обычно
+     * 
+     * @param key         значение заголовка Idempotency-Key
+     * @param fingerprint описание запроса, по которому повтор сверяется с
+     *                    исходным запросом
+     * @param request     выполнение запроса
+     * @return ответ на запрос
+     */
+    public Uni<Response> handle(String key, String fingerprint, Supplier<Uni<Response>> request) {
+        if (key == null) {
+            return request.get();
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            return Uni.createFrom().item(Response.status(Status.BAD_REQUEST)
+                    .entity("invalid idempotency key").build());
+        }
+        return idempotencyService.execute(key, fingerprint, () -> request.get().map(this::toIdempotentResponse))
+                .map(response -> Response.status(response.getStatusCode()).entity(response.getBody()).build())
+                .onFailure(IdempotencyKeyInProgressException.class)
+                .recoverWithItem(failure -> Response.status(Status.CONFLICT).entity(failure.getMessage()).build())
+                .onFailure(IdempotencyKeyMismatchException.class)
+                .recoverWithItem(failure -> Response.status(UNPROCESSABLE_ENTITY).entity(failure.getMessage()).build())
+                .onFailure()
+                .recoverWithItem(failure -> Response.serverError().entity(failure.getMessage()).build());
+    }
+
+    private IdempotentResponse toIdempotentResponse(Response response) {
+        final var entity = response.getEntity();
+        if (entity == null || entity instanceof String) {
+            return new IdempotentResponse(response.getStatus(), (String) entity);
+        }
+        try {
+            return new IdempotentResponse(response.getStatus(), objectMapper.writeValueAsString(entity));
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("response serialization failed", ex);
+        }
+    }
+}
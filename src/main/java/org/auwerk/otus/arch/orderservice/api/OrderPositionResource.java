@@ -1,10 +1,13 @@
 package org.auwerk.otus.arch.orderservice.api;
 
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import javax.annotation.security.RolesAllowed;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
@@ -15,6 +18,8 @@ import javax.ws.rs.core.Response.Status;
 
 import org.auwerk.otus.arch.orderservice.api.dto.AddOrderPositionRequestDto;
 import org.auwerk.otus.arch.orderservice.api.dto.AddOrderPositionResponseDto;
+import org.auwerk.otus.arch.orderservice.domain.OrderPosition;
+import org.auwerk.otus.arch.orderservice.exception.ClientUnavailableException;
 import org.auwerk.otus.arch.orderservice.exception.OrderCanNotBeChangedException;
 import org.auwerk.otus.arch.orderservice.exception.OrderNotFoundException;
 import org.auwerk.otus.arch.orderservice.exception.OrderPositionNotFoundException;
@@ -32,9 +37,17 @@ import lombok.RequiredArgsConstructor;
 public class OrderPositionResource {
 
     private final OrderService orderService;
+    private final IdempotentRequestHandler idempotentRequests;
 
     @POST
-    public Uni<Response> addOrderPosition(AddOrderPositionRequestDto requestDto) {
+    public Uni<Response> addOrderPosition(AddOrderPositionRequestDto requestDto,
+            @HeaderParam(IdempotentRequestHandler.IDEMPOTENCY_KEY_HEADER) String idempotencyKey) {
+        final var fingerprint = "addOrderPosition:" + requestDto.getOrderId() + ":" + requestDto.getProductCode()
+                + ":" + requestDto.getQuantity();
+        return idempotentRequests.handle(idempotencyKey, fingerprint, () -> executeAddOrderPosition(requestDto));
+    }
+
+    private Uni<Response> executeAddOrderPosition(AddOrderPositionRequestDto requestDto) {
         return orderService
                 .addOrderPosition(requestDto.getOrderId(), requestDto.getProductCode(), requestDto.getQuantity())
                 .map(positionId -> {
@@ -49,6 +62,60 @@ public class OrderPositionResource {
                 .recoverWithItem(failure -> Response.status(Status.FORBIDDEN).entity(failure.getMessage()).build())
                 .onFailure(ProductNotAvailableException.class)
                 .recoverWithItem(failure -> Response.status(Status.CONFLICT).entity(failure.getMessage()).build())
+                .onFailure(ClientUnavailableException.class)
+                .recoverWithItem(failure -> Response.status(Status.SERVICE_UNAVAILABLE).entity(failure.getMessage()).build())
+                .onFailure()
+                .recoverWithItem(failure -> Response.serverError().entity(failure.getMessage()).build());
+    }
+
+    @POST
+    @Path("/batch")
+    public Uni<Response> addOrderPositions(List<AddOrderPositionRequestDto> requestDtos,
+            @HeaderParam(IdempotentRequestHandler.IDEMPOTENCY_KEY_HEADER) String idempotencyKey) {
+        if (requestDtos == null || requestDtos.stream().anyMatch(requestDto -> requestDto == null
+                || requestDto.getProductCode() == null || requestDto.getQuantity() == null)) {
+            return Uni.createFrom().item(Response.status(Status.BAD_REQUEST)
+                    .entity("product code and quantity expected for every position").build());
+        }
+        final var orderIds = requestDtos.stream()
+                .map(AddOrderPositionRequestDto::getOrderId)
+                .collect(Collectors.toSet());
+        if (orderIds.size() != 1 || orderIds.contains(null)) {
+            return Uni.createFrom().item(Response.status(Status.BAD_REQUEST)
+                    .entity("positions of exactly one order expected").build());
+        }
+        final var orderId = orderIds.iterator().next();
+        final var fingerprint = "addOrderPositions:" + orderId + requestDtos.stream()
+                .map(requestDto -> ":" + requestDto.getProductCode() + ":" + requestDto.getQuantity())
+                .collect(Collectors.joining());
+        return idempotentRequests.handle(idempotencyKey, fingerprint,
+                () -> executeAddOrderPositions(orderId, requestDtos));
+    }
+
+    private Uni<Response> executeAddOrderPositions(UUID orderId, List<AddOrderPositionRequestDto> requestDtos) {
+        final var positions = requestDtos.stream()
+                .map(requestDto -> OrderPosition.builder()
+                        .productCode(requestDto.getProductCode())
+                        .quantity(requestDto.getQuantity())
+                        .build())
+                .toList();
+        return orderService.addOrderPositions(orderId, positions)
+                .map(positionIds -> {
+                    final var response = positionIds.stream()
+                            .map(positionId -> AddOrderPositionResponseDto.builder()
+                                    .positionId(positionId)
+                                    .build())
+                            .toList();
+                    return Response.ok(response).build();
+                })
+                .onFailure(OrderNotFoundException.class)
+                .recoverWithItem(failure -> Response.status(Status.NOT_FOUND).entity(failure.getMessage()).build())
+                .onFailure(OrderCanNotBeChangedException.class)
+                .recoverWithItem(failure -> Response.status(Status.FORBIDDEN).entity(failure.getMessage()).build())
+                .onFailure(ProductNotAvailableException.class)
+                .recoverWithItem(failure -> Response.status(Status.CONFLICT).entity(failure.getMessage()).build())
+                .onFailure(ClientUnavailableException.class)
+                .recoverWithItem(failure -> Response.status(Status.SERVICE_UNAVAILABLE).entity(failure.getMessage()).build())
                 .onFailure()
                 .recoverWithItem(failure -> Response.serverError().entity(failure.getMessage()).build());
     }
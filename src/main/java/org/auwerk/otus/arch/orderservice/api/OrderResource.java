@@ -1,5 +1,8 @@
 package org.auwerk.otus.arch.orderservice.api;
 
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.UUID;
 
 import javax.annotation.security.RolesAllowed;
@@ -7,27 +10,43 @@ import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.sse.OutboundSseEvent;
+import javax.ws.rs.sse.Sse;
 
 import org.auwerk.otus.arch.orderservice.api.dto.CreateOrderResponseDto;
 import org.auwerk.otus.arch.orderservice.client.exception.billing.InsufficentFundsException;
+import org.auwerk.otus.arch.orderservice.domain.Order;
+import org.auwerk.otus.arch.orderservice.domain.OrderCursor;
+import org.auwerk.otus.arch.orderservice.domain.OrderDetail;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatusEvent;
+import org.auwerk.otus.arch.orderservice.exception.ClientUnavailableException;
+import org.auwerk.otus.arch.orderservice.exception.InvalidOrderCursorException;
+import org.auwerk.otus.arch.orderservice.exception.InvalidOrderExpandException;
 import org.auwerk.otus.arch.orderservice.exception.OrderAlreadyPlacedException;
 import org.auwerk.otus.arch.orderservice.exception.OrderCanNotBeCanceledException;
+import org.auwerk.otus.arch.orderservice.exception.OrderConcurrentlyModifiedException;
 import org.auwerk.otus.arch.orderservice.exception.OrderCreatedByDifferentUserException;
 import org.auwerk.otus.arch.orderservice.exception.OrderIsNotPlacedException;
 import org.auwerk.otus.arch.orderservice.exception.OrderNotFoundException;
 import org.auwerk.otus.arch.orderservice.exception.ProductNotAvailableException;
 import org.auwerk.otus.arch.orderservice.mapper.OrderMapper;
+import org.auwerk.otus.arch.orderservice.mapper.OrderStatusChangeMapper;
 import org.auwerk.otus.arch.orderservice.service.OrderService;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.resteasy.reactive.server.ServerExceptionMapper;
 
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import lombok.RequiredArgsConstructor;
 
@@ -40,15 +59,52 @@ public class OrderResource {
 
     protected static final String DEFAULT_PAGE_SIZE = "10";
     protected static final String DEFAULT_PAGE = "1";
+    protected static final String FULL_VIEW = "full";
+    protected static final String SUMMARY_VIEW = "summary";
+    protected static final String NEXT_PAGE_CURSOR_HEADER = "X-Next-Page-Cursor";
+    protected static final String STATUS_EVENT_NAME = "status";
+    protected static final String HEARTBEAT_COMMENT = "heartbeat";
 
     private final OrderMapper orderMapper;
+    private final OrderStatusChangeMapper statusChangeMapper;
     private final OrderService orderService;
+    private final IdempotentRequestHandler idempotentRequests;
+
+    @ConfigProperty(name = "otus.order-events.heartbeat-interval", defaultValue = "PT15S")
+    Duration heartbeatInterval;
 
     @GET
     public Uni<Response> getAllOrders(@QueryParam("pageSize") @DefaultValue(DEFAULT_PAGE_SIZE) int pageSize,
-            @QueryParam("page") @DefaultValue(DEFAULT_PAGE) int page) {
-        return orderService.getAllOrders(pageSize, page)
-                .map(orders -> Response.ok(orderMapper.toDtos(orders)).build())
+            @QueryParam("page") @DefaultValue(DEFAULT_PAGE) int page,
+            @QueryParam("after") String after,
+            @QueryParam("view") @DefaultValue(FULL_VIEW) String view,
+            @QueryParam("expand") String expand) {
+        if (!FULL_VIEW.equals(view) && !SUMMARY_VIEW.equals(view)) {
+            return Uni.createFrom()
+                    .item(Response.status(Status.BAD_REQUEST).entity("invalid order view, value=" + view).build());
+        }
+        // The summary is served from the orders rows alone, no details are loaded
+        final var summary = SUMMARY_VIEW.equals(view);
+        final Uni<List<Order>> ordersUni = Uni.createFrom()
+                .item(() -> summary ? EnumSet.noneOf(OrderDetail.class) : OrderDetail.parse(expand))
+                .flatMap(details -> after == null
+                        ? orderService.getAllOrders(pageSize, page, details)
+                        : orderService.getAllOrdersAfter(pageSize, OrderCursor.decode(after), details));
+        return ordersUni
+                .map(orders -> {
+                    final var response = Response.ok(summary
+                            ? orderMapper.toSummaryDtos(orders)
+                            : orderMapper.toDtos(orders));
+                    if (!orders.isEmpty() && orders.size() == pageSize) {
+                        response.header(NEXT_PAGE_CURSOR_HEADER,
+                                OrderCursor.of(orders.get(orders.size() - 1)).encode());
+                    }
+                    return response.build();
+                })
+                .onFailure(InvalidOrderCursorException.class)
+                .recoverWithItem(failure -> Response.status(Status.BAD_REQUEST).entity(failure.getMessage()).build())
+                .onFailure(InvalidOrderExpandException.class)
+                .recoverWithItem(failure -> Response.status(Status.BAD_REQUEST).entity(failure.getMessage()).build())
                 .onFailure()
                 .recoverWithItem(failure -> Response.serverError().entity(failure.getMessage()).build());
     }
@@ -66,8 +122,44 @@ public class OrderResource {
                 .recoverWithItem(failure -> Response.serverError().entity(failure.getMessage()).build());
     }
 
+    @GET
+    @Path("/{orderId}/events")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public Multi<OutboundSseEvent> getOrderEvents(@PathParam("orderId") UUID orderId, @Context Sse sse) {
+        final var heartbeat = sse.newEventBuilder().comment(HEARTBEAT_COMMENT).build();
+        // Marks the end of status events, never sent to the client
+        final var end = sse.newEventBuilder().comment("end").build();
+
+        final var events = orderService.getOrderEvents(orderId)
+                .map(event -> toSseEvent(sse, event))
+                .onCompletion().continueWith(end);
+        // Heartbeats start after the first interval, so ownership errors are still sent as a response status
+        final var heartbeats = Multi.createFrom().ticks()
+                .startingAfter(heartbeatInterval)
+                .every(heartbeatInterval)
+                .onOverflow().drop()
+                .map(tick -> heartbeat);
+        return Multi.createBy().merging().streams(events, heartbeats)
+                .select().first(event -> event != end);
+    }
+
+    @ServerExceptionMapper
+    public Response mapOrderNotFound(OrderNotFoundException failure) {
+        return Response.status(Status.NOT_FOUND).entity(failure.getMessage()).build();
+    }
+
+    @ServerExceptionMapper
+    public Response mapOrderCreatedByDifferentUser(OrderCreatedByDifferentUserException failure) {
+        return Response.status(Status.FORBIDDEN).entity(failure.getMessage()).build();
+    }
+
     @POST
-    public Uni<Response> createOrder() {
+    public Uni<Response> createOrder(
+            @HeaderParam(IdempotentRequestHandler.IDEMPOTENCY_KEY_HEADER) String idempotencyKey) {
+        return idempotentRequests.handle(idempotencyKey, "createOrder", this::executeCreateOrder);
+    }
+
+    private Uni<Response> executeCreateOrder() {
         return orderService.createOrder()
                 .map(orderId -> {
                     final var response = CreateOrderResponseDto.builder()
@@ -93,13 +185,22 @@ public class OrderResource {
                 .recoverWithItem(failure -> Response.status(Status.CONFLICT).entity(failure.getMessage()).build())
                 .onFailure(ProductNotAvailableException.class)
                 .recoverWithItem(failure -> Response.status(Status.CONFLICT).entity(failure.getMessage()).build())
+                .onFailure(OrderConcurrentlyModifiedException.class)
+                .recoverWithItem(failure -> Response.status(Status.CONFLICT).entity(failure.getMessage()).build())
+                .onFailure(ClientUnavailableException.class)
+                .recoverWithItem(failure -> Response.status(Status.SERVICE_UNAVAILABLE).entity(failure.getMessage()).build())
                 .onFailure()
                 .recoverWithItem(failure -> Response.serverError().entity(failure.getMessage()).build());
     }
 
     @PUT
     @Path("/{orderId}/pay")
-    public Uni<Response> payOrder(@PathParam("orderId") UUID orderId) {
+    public Uni<Response> payOrder(@PathParam("orderId") UUID orderId,
+            @HeaderParam(IdempotentRequestHandler.IDEMPOTENCY_KEY_HEADER) String idempotencyKey) {
+        return idempotentRequests.handle(idempotencyKey, "payOrder:" + orderId, () -> executePayOrder(orderId));
+    }
+
+    private Uni<Response> executePayOrder(UUID orderId) {
         return orderService.payOrder(orderId)
                 .replaceWith(Response.ok().build())
                 .onFailure(OrderNotFoundException.class)
@@ -110,6 +211,10 @@ public class OrderResource {
                 .recoverWithItem(failure -> Response.status(Status.CONFLICT).entity(failure.getMessage()).build())
                 .onFailure(InsufficentFundsException.class)
                 .recoverWithItem(failure -> Response.status(Status.FORBIDDEN).entity(failure.getMessage()).build())
+                .onFailure(OrderConcurrentlyModifiedException.class)
+                .recoverWithItem(failure -> Response.status(Status.CONFLICT).entity(failure.getMessage()).build())
+                .onFailure(ClientUnavailableException.class)
+                .recoverWithItem(failure -> Response.status(Status.SERVICE_UNAVAILABLE).entity(failure.getMessage()).build())
                 .onFailure()
                 .recoverWithItem(failure -> Response.serverError().entity(failure.getMessage()).build());
     }
@@ -125,7 +230,18 @@ public class OrderResource {
                 .recoverWithItem(failure -> Response.status(Status.FORBIDDEN).entity(failure.getMessage()).build())
                 .onFailure(OrderCanNotBeCanceledException.class)
                 .recoverWithItem(failure -> Response.status(Status.CONFLICT).entity(failure.getMessage()).build())
+                .onFailure(OrderConcurrentlyModifiedException.class)
+                .recoverWithItem(failure -> Response.status(Status.CONFLICT).entity(failure.getMessage()).build())
                 .onFailure()
                 .recoverWithItem(failure -> Response.serverError().entity(failure.getMessage()).build());
     }
+
+    private OutboundSseEvent toSseEvent(Sse sse, OrderStatusEvent event) {
+        return sse.newEventBuilder()
+                .id(event.getId() == null ? null : event.getId().toString())
+                .name(STATUS_EVENT_NAME)
+                .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                .data(statusChangeMapper.toDto(event))
+                .build();
+    }
 }
@@ -1,5 +1,6 @@
 package org.auwerk.otus.arch.orderservice.api.dto;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
@@ -14,6 +15,8 @@ public class OrderDto {
     private String status;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+    private BigDecimal totalAmount;
+    private int positionCount;
     private List<OrderPositionDto> positions;
     private List<OrderStatusChangeDto> statusChanges;
 }
@@ -0,0 +1,19 @@
+package org.auwerk.otus.arch.orderservice.api.dto;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import io.quarkus.runtime.annotations.RegisterForReflection;
+import lombok.Data;
+
+@Data
+@RegisterForReflection
+public class OrderSummaryDto {
+    private UUID id;
+    private String status;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    private BigDecimal totalAmount;
+    private int positionCount;
+}
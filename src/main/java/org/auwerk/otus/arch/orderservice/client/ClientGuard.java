@@ -0,0 +1,168 @@
+package org.auwerk.otus.arch.orderservice.client;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import javax.ws.rs.WebApplicationException;
+
+import org.auwerk.otus.arch.orderservice.exception.ClientUnavailableException;
+import org.auwerk.otus.arch.orderservice.exception.ClientUnavailableException.Reason;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.smallrye.mutiny.Uni;
+import lombok.Builder;
+import lombok.Singular;
+import lombok.extern.jbosslog.JBossLog;
+
+/**
+ * Защита вызовов внешнего сервиса: таймаут, ограничение числа одновременных
+ * запросов и circuit breaker. Отклоненные и не дождавшиеся ответа вызовы
+ * завершаются {@link ClientUnavailableException}, не занимая ресурсы
+ * сервиса. После заданного числа сбоев подряд цепь размыкается и вызовы
+ * отклоняются без обращения к сервису; по истечении времени размыкания
+ * пропускается один пробный вызов, по результату которого цепь замыкается или
+ * размыкается снова. Ответы 4xx и исключения из ignoredFailures сбоями
+ * сервиса не считаются.
+ */
+@JBossLog
+public class ClientGuard {
+
+    public static final String CIRCUIT_STATE = "otus.client.circuit.state";
+    public static final String IN_FLIGHT = "otus.client.in.flight";
+    public static final String REJECTIONS = "otus.client.rejections";
+
+    enum CircuitState {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final String client;
+    private final Duration timeout;
+    private final int maxInFlight;
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final Set<Class<? extends Throwable>> ignoredFailures;
+    private final MeterRegistry registry;
+
+    private final AtomicReference<CircuitState> state = new AtomicReference<>(CircuitState.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile long openedAt;
+
+    @Builder
+    public ClientGuard(String client, Duration timeout, int maxInFlight, int failureThreshold,
+            Duration openDuration, @Singular Set<Class<? extends Throwable>> ignoredFailures,
+            MeterRegistry registry) {
+        this.client = client;
+        this.timeout = timeout;
+        this.maxInFlight = maxInFlight;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.ignoredFailures = ignoredFailures;
+        this.registry = registry;
+
+        Gauge.builder(CIRCUIT_STATE, state, s -> s.get().ordinal())
+                .description("Circuit breaker state: 0 - closed, 1 - half-open, 2 - open")
+                .tag("client", client)
+                .strongReference(true)
+                .register(registry);
+        Gauge.builder(IN_FLIGHT, inFlight, AtomicInteger::get)
+                .description("Requests to the service in flight")
+                .tag("client", client)
+                .strongReference(true)
+                .register(registry);
+    }
+
+    /**
+     * Применение защиты к вызову сервиса; вызов выполняется при подписке
+     */
+    public <T> Function<Uni<T>, Uni<T>> guard() {
+        return uni -> Uni.createFrom().deferred(() -> {
+            if (inFlight.incrementAndGet() > maxInFlight) {
+                inFlight.decrementAndGet();
+                return reject(Reason.BULKHEAD_FULL);
+            }
+            if (!tryAcquirePermission()) {
+                inFlight.decrementAndGet();
+                return reject(Reason.CIRCUIT_OPEN);
+            }
+            return uni
+                    .ifNoItem().after(timeout).failWith(() -> unavailable(Reason.TIMEOUT))
+                    .onItemOrFailure().invoke((item, failure) -> {
+                        if (failure != null && isServiceFailure(failure)) {
+                            recordFailure();
+                        } else {
+                            recordSuccess();
+                        }
+                    })
+                    .onCancellation().invoke(this::recordCancellation)
+                    .onTermination().invoke(inFlight::decrementAndGet);
+        });
+    }
+
+    CircuitState getState() {
+        return state.get();
+    }
+
+    private boolean tryAcquirePermission() {
+        return switch (state.get()) {
+            case CLOSED -> true;
+            // Only the caller switching the circuit to half-open gets through as a probe
+            case OPEN -> System.nanoTime() - openedAt >= openDuration.toNanos()
+                    && state.compareAndSet(CircuitState.OPEN, CircuitState.HALF_OPEN);
+            case HALF_OPEN -> false;
+        };
+    }
+
+    private void recordSuccess() {
+        consecutiveFailures.set(0);
+        if (state.compareAndSet(CircuitState.HALF_OPEN, CircuitState.CLOSED)) {
+            log.infof("circuit closed, client=%s", client);
+        }
+    }
+
+    private void recordFailure() {
+        if (state.get() == CircuitState.HALF_OPEN || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            open();
+        }
+    }
+
+    private void recordCancellation() {
+        // A cancelled probe tells nothing about the service, the next probe waits for another open period
+        if (state.get() == CircuitState.HALF_OPEN) {
+            open();
+        }
+    }
+
+    private void open() {
+        openedAt = System.nanoTime();
+        consecutiveFailures.set(0);
+        if (state.getAndSet(CircuitState.OPEN) != CircuitState.OPEN) {
+            log.warnf("circuit opened, client=%s", client);
+        }
+    }
+
+    private boolean isServiceFailure(Throwable failure) {
+        if (failure instanceof WebApplicationException ex) {
+            return ex.getResponse().getStatus() >= 500;
+        }
+        return ignoredFailures.stream().noneMatch(type -> type.isInstance(failure));
+    }
+
+    private <T> Uni<T> reject(Reason reason) {
+        return Uni.createFrom().failure(unavailable(reason));
+    }
+
+    private ClientUnavailableException unavailable(Reason reason) {
+        Counter.builder(REJECTIONS)
+                .description("Requests to the service failed fast or timed out")
+                .tags("client", client, "reason", reason.name().toLowerCase())
+                .register(registry)
+                .increment();
+        return new ClientUnavailableException(client, reason);
+    }
+}
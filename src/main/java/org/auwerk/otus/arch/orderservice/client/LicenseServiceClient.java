@@ -1,5 +1,6 @@
 package org.auwerk.otus.arch.orderservice.client;
 
+import java.util.List;
 import java.util.UUID;
 
 import javax.ws.rs.DELETE;
@@ -25,4 +26,12 @@ public interface LicenseServiceClient {
     @DELETE
     @Path("/{licenseId}")
     Uni<Void> deleteLicense(@PathParam("licenseId") UUID licenseId);
+
+    @POST
+    @Path("/batch")
+    Uni<List<CreateLicenseResponseDto>> createLicenses(List<CreateLicenseRequestDto> requests);
+
+    @POST
+    @Path("/batch/delete")
+    Uni<Void> deleteLicenses(List<UUID> licenseIds);
 }
@@ -0,0 +1,36 @@
+package org.auwerk.otus.arch.orderservice.dao;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import org.auwerk.otus.arch.orderservice.domain.IdempotencyRecord;
+import org.auwerk.otus.arch.orderservice.domain.IdempotentResponse;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.SqlClient;
+
+public interface IdempotencyKeyDao {
+
+    /**
+     * Захват ключа идемпотентности для выполнения запроса. Ключ, уже
+     * захваченный другим запросом, может быть захвачен повторно, если его
+     * запрос не завершился до abandonedBefore либо запись устарела до
+     * expiredBefore.
+     * 
+     * @return false, если ключ уже захвачен
+     */
+    Uni<Boolean> tryClaim(SqlClient client, IdempotencyRecord record, LocalDateTime abandonedBefore,
+            LocalDateTime expiredBefore);
+
+    Uni<Optional<IdempotencyRecord>> findByKey(SqlClient client, String userName, String key);
+
+    /**
+     * Сохранение ответа на запрос, захвативший ключ
+     */
+    Uni<Void> complete(SqlClient client, String userName, String key, IdempotentResponse response);
+
+    /**
+     * Освобождение ключа, запрос с которым можно будет выполнить повторно
+     */
+    Uni<Void> deleteByKey(SqlClient client, String userName, String key);
+}
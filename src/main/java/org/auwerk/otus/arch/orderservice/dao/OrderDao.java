@@ -2,21 +2,65 @@ package org.auwerk.otus.arch.orderservice.dao;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import org.auwerk.otus.arch.orderservice.domain.Order;
+import org.auwerk.otus.arch.orderservice.domain.OrderCursor;
 import org.auwerk.otus.arch.orderservice.domain.OrderStatus;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatusChange;
+import org.auwerk.otus.arch.orderservice.exception.OrderConcurrentlyModifiedException;
 
 import io.smallrye.mutiny.Uni;
-import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.SqlClient;
 
 public interface OrderDao {
 
-    Uni<List<Order>> findAllByUserName(PgPool pool, String userName, int pageSize, int page);
+    Uni<List<Order>> findAllByUserName(SqlClient client, String userName, int pageSize, int page);
 
-    Uni<Order> findById(PgPool pool, UUID id);
+    Uni<List<Order>> findAllByUserNameAfter(SqlClient client, String userName, OrderCursor after, int pageSize);
 
-    Uni<Void> insert(PgPool pool, UUID id, String userName, LocalDateTime createdAt);
+    Uni<Order> findById(SqlClient client, UUID id);
 
-    Uni<Void> updateStatus(PgPool pool, UUID id, OrderStatus status);
+    Uni<Void> insert(SqlClient client, UUID id, String userName, LocalDateTime createdAt);
+
+    /**
+     * Перевод заказа в статус при условии, что заказ не изменялся с момента
+     * чтения; версия заказа увеличивается
+     * 
+     * @param version        прочитанная версия заказа
+     * @param expectedStatus прочитанный статус заказа
+     * @param targetStatus   новый статус заказа
+     * @throws OrderConcurrentlyModifiedException если версия или статус заказа
+     *                                            изменились
+     */
+    Uni<Void> updateStatus(SqlClient client, UUID id, long version, OrderStatus expectedStatus,
+            OrderStatus targetStatus);
+
+    /**
+     * Отметка изменения состава заказа при условии, что заказ находится в
+     * указанном статусе; версия заказа увеличивается без проверки, строка
+     * заказа блокируется до конца транзакции, поэтому одновременные изменения
+     * одного заказа выполняются по очереди
+     * 
+     * @param expectedStatus статус, в котором допустимо изменение
+     * @return false, если заказ не находится в указанном статусе
+     */
+    Uni<Boolean> touch(SqlClient client, UUID id, OrderStatus expectedStatus);
+
+    /**
+     * Перевод заказа пользователя в статус одним запросом вместе с записью в
+     * историю статусов
+     * 
+     * @param userName         владелец заказа
+     * @param version          прочитанная версия заказа; null, если заказ не
+     *                         читался
+     * @param expectedStatuses статусы, из которых допустим переход
+     * @param statusChange     новый статус заказа
+     * @return false, если заказ не найден, принадлежит другому пользователю, не
+     *         находится в одном из ожидаемых статусов или изменился после
+     *         чтения
+     */
+    Uni<Boolean> transitionStatus(SqlClient client, UUID id, String userName, Long version,
+            Set<OrderStatus> expectedStatuses, OrderStatusChange statusChange);
 }
\ No newline at end of file
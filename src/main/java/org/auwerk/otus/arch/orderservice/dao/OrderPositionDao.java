@@ -2,22 +2,47 @@ package org.auwerk.otus.arch.orderservice.dao;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.auwerk.otus.arch.orderservice.domain.OrderPosition;
 
 import io.smallrye.mutiny.Uni;
-import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.SqlClient;
 
+/**
+ * Позиции заказа. Изменяющие позиции операции тем же запросом обновляют
+ * итоги заказа: сумму и количество позиций. В заказе не более одной позиции
+ * на продукт.
+ */
 public interface OrderPositionDao {
 
-    Uni<OrderPosition> findById(PgPool pool, UUID id);
+    Uni<OrderPosition> findById(SqlClient client, UUID id);
 
-    Uni<List<OrderPosition>> findAllByOrderId(PgPool pool, UUID orderId);
+    Uni<List<OrderPosition>> findAllByOrderId(SqlClient client, UUID orderId);
 
-    Uni<UUID> insert(PgPool pool, OrderPosition position);
+    Uni<List<OrderPosition>> findAllByOrderIds(SqlClient client, List<UUID> orderIds);
 
-    Uni<Void> updatePriceById(PgPool pool, UUID id, BigDecimal price);
+    /**
+     * Добавление позиции; если продукт уже есть в заказе, количество
+     * существующей позиции увеличивается, ее цена сохраняется
+     * 
+     * @param position добавляемая позиция
+     * @return идентификатор добавленной или увеличенной позиции
+     */
+    Uni<UUID> upsert(SqlClient client, OrderPosition position);
 
-    Uni<Void> deleteById(PgPool pool, UUID id);
+    /**
+     * Добавление нескольких позиций одним запросом, по тем же правилам, что и
+     * {@link #upsert(SqlClient, OrderPosition)}; позиции одного продукта
+     * складываются
+     * 
+     * @param positions добавляемые позиции
+     * @return идентификаторы позиций в порядке их передачи
+     */
+    Uni<List<UUID>> upsertAll(SqlClient client, List<OrderPosition> positions);
+
+    Uni<Void> updatePrices(SqlClient client, Map<UUID, BigDecimal> pricesById);
+
+    Uni<Void> deleteById(SqlClient client, UUID id);
 }
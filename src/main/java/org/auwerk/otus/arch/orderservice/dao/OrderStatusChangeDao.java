@@ -6,11 +6,13 @@ import java.util.UUID;
 import org.auwerk.otus.arch.orderservice.domain.OrderStatusChange;
 
 import io.smallrye.mutiny.Uni;
-import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.SqlClient;
 
 public interface OrderStatusChangeDao {
 
-    public Uni<List<OrderStatusChange>> findAllByOrderId(PgPool pool, UUID orderId);
+    public Uni<List<OrderStatusChange>> findAllByOrderId(SqlClient client, UUID orderId);
 
-    public Uni<Void> insert(PgPool pool, UUID orderId, OrderStatusChange statusChange);
+    public Uni<List<OrderStatusChange>> findAllByOrderIds(SqlClient client, List<UUID> orderIds);
+
+    public Uni<Void> insert(SqlClient client, UUID orderId, OrderStatusChange statusChange);
 }
@@ -0,0 +1,41 @@
+package org.auwerk.otus.arch.orderservice.dao;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.auwerk.otus.arch.orderservice.domain.OrderStatusChange;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatusEvent;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.SqlClient;
+
+public interface OutboxDao {
+
+    /**
+     * Канал LISTEN/NOTIFY, в который передаются события смены статуса заказа
+     */
+    String ORDER_STATUS_CHANNEL = "order_status_changes";
+
+    /**
+     * Запись события в outbox; событие также передается в канал
+     * {@link #ORDER_STATUS_CHANNEL} в формате JSON, подписчики получают его
+     * после фиксации транзакции
+     */
+    Uni<Void> insert(SqlClient client, UUID orderId, OrderStatusChange statusChange);
+
+    /**
+     * Захват права на публикацию событий до конца транзакции; публикацию в
+     * каждый момент выполняет только один экземпляр сервиса, что сохраняет
+     * порядок событий
+     * 
+     * @return false, если публикацию уже выполняет другой экземпляр
+     */
+    Uni<Boolean> tryLockRelay(SqlClient client);
+
+    /**
+     * Получение самых старых неопубликованных событий в порядке их записи
+     */
+    Uni<List<OrderStatusEvent>> findOldest(SqlClient client, int limit);
+
+    Uni<Void> deleteByIds(SqlClient client, List<Long> ids);
+}
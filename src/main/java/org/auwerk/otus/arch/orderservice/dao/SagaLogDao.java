@@ -0,0 +1,33 @@
+package org.auwerk.otus.arch.orderservice.dao;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.auwerk.otus.arch.orderservice.domain.SagaExecution;
+import org.auwerk.otus.arch.orderservice.domain.SagaStatus;
+import org.auwerk.otus.arch.orderservice.domain.SagaStep;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.SqlClient;
+
+public interface SagaLogDao {
+
+    Uni<Void> insertExecution(SqlClient client, SagaExecution execution);
+
+    Uni<Void> updateExecutionStatus(SqlClient client, UUID id, SagaStatus status);
+
+    /**
+     * Захват самой старой незавершенной саги, не обновлявшейся с указанного
+     * момента; строка блокируется до конца транзакции, уже заблокированные
+     * строки и саги из списка исключений пропускаются. Блокировка не мешает
+     * записи шагов саги через другие соединения.
+     */
+    Uni<Optional<SagaExecution>> lockStaleExecution(SqlClient client, LocalDateTime updatedBefore,
+            List<UUID> excludedIds);
+
+    Uni<List<SagaStep>> findStepsBySagaId(SqlClient client, UUID sagaId);
+
+    Uni<Void> insertSteps(SqlClient client, List<SagaStep> steps);
+}
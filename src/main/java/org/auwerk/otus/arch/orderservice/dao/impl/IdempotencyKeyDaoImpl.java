@@ -0,0 +1,91 @@
+package org.auwerk.otus.arch.orderservice.dao.impl;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import org.auwerk.otus.arch.orderservice.dao.IdempotencyKeyDao;
+import org.auwerk.otus.arch.orderservice.domain.IdempotencyRecord;
+import org.auwerk.otus.arch.orderservice.domain.IdempotentResponse;
+import org.auwerk.otus.arch.orderservice.exception.DaoException;
+import org.auwerk.otus.arch.orderservice.metrics.MetricsRecorder;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.SqlClient;
+import io.vertx.mutiny.sqlclient.Tuple;
+import lombok.RequiredArgsConstructor;
+
+@ApplicationScoped
+@RequiredArgsConstructor
+public class IdempotencyKeyDaoImpl implements IdempotencyKeyDao {
+
+    private static final String DAO_NAME = "IdempotencyKeyDao";
+
+    private final MetricsRecorder metrics;
+
+    @Override
+    public Uni<Boolean> tryClaim(SqlClient client, IdempotencyRecord record, LocalDateTime abandonedBefore,
+            LocalDateTime expiredBefore) {
+        return client
+                .preparedQuery("INSERT INTO idempotency_keys(username, idempotency_key, fingerprint, created_at) "
+                        + "VALUES($1, $2, $3, $4) "
+                        + "ON CONFLICT (username, idempotency_key) DO UPDATE SET fingerprint=EXCLUDED.fingerprint, "
+                        + "status_code=NULL, body=NULL, created_at=EXCLUDED.created_at "
+                        + "WHERE (idempotency_keys.status_code IS NULL AND idempotency_keys.created_at < $5) "
+                        + "OR idempotency_keys.created_at < $6")
+                .execute(Tuple.of(record.getUserName(), record.getKey(), record.getFingerprint(),
+                        record.getCreatedAt(), abandonedBefore, expiredBefore))
+                .map(rowSet -> rowSet.rowCount() == 1)
+                .plug(metrics.queryTimer(DAO_NAME, "tryClaim"));
+    }
+
+    @Override
+    public Uni<Optional<IdempotencyRecord>> findByKey(SqlClient client, String userName, String key) {
+        return client.preparedQuery("SELECT * FROM idempotency_keys WHERE username=$1 AND idempotency_key=$2")
+                .execute(Tuple.of(userName, key))
+                .map(rowSet -> {
+                    final var rowSetIterator = rowSet.iterator();
+                    if (!rowSetIterator.hasNext()) {
+                        return Optional.<IdempotencyRecord>empty();
+                    }
+                    return Optional.of(mapRow(rowSetIterator.next()));
+                })
+                .plug(metrics.queryTimer(DAO_NAME, "findByKey"));
+    }
+
+    @Override
+    public Uni<Void> complete(SqlClient client, String userName, String key, IdempotentResponse response) {
+        return client
+                .preparedQuery(
+                        "UPDATE idempotency_keys SET status_code=$1, body=$2 WHERE username=$3 AND idempotency_key=$4")
+                .execute(Tuple.of(response.getStatusCode(), response.getBody(), userName, key))
+                .invoke(rowSet -> {
+                    if (rowSet.rowCount() != 1) {
+                        throw new DaoException("idempotency key completion failed, key=" + key);
+                    }
+                })
+                .replaceWithVoid()
+                .plug(metrics.queryTimer(DAO_NAME, "complete"));
+    }
+
+    @Override
+    public Uni<Void> deleteByKey(SqlClient client, String userName, String key) {
+        return client.preparedQuery("DELETE FROM idempotency_keys WHERE username=$1 AND idempotency_key=$2")
+                .execute(Tuple.of(userName, key))
+                .replaceWithVoid()
+                .plug(metrics.queryTimer(DAO_NAME, "deleteByKey"));
+    }
+
+    protected static IdempotencyRecord mapRow(Row row) {
+        final var statusCode = row.getInteger("status_code");
+        return IdempotencyRecord.builder()
+                .userName(row.getString("username"))
+                .key(row.getString("idempotency_key"))
+                .fingerprint(row.getString("fingerprint"))
+                .response(statusCode == null ? null : new IdempotentResponse(statusCode, row.getString("body")))
+                .createdAt(row.getLocalDateTime("created_at"))
+                .build();
+    }
+}
@@ -2,42 +2,74 @@ package org.auwerk.otus.arch.orderservice.dao.impl;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.enterprise.context.ApplicationScoped;
 
 import org.auwerk.otus.arch.orderservice.dao.OrderDao;
 import org.auwerk.otus.arch.orderservice.domain.Order;
+import org.auwerk.otus.arch.orderservice.domain.OrderCursor;
 import org.auwerk.otus.arch.orderservice.domain.OrderStatus;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatusChange;
 import org.auwerk.otus.arch.orderservice.exception.DaoException;
+import org.auwerk.otus.arch.orderservice.exception.OrderConcurrentlyModifiedException;
+import org.auwerk.otus.arch.orderservice.metrics.MetricsRecorder;
 
 import io.smallrye.mutiny.Uni;
-import io.vertx.mutiny.pgclient.PgPool;
 import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.SqlClient;
 import io.vertx.mutiny.sqlclient.Tuple;
+import lombok.RequiredArgsConstructor;
 
 @ApplicationScoped
+@RequiredArgsConstructor
 public class OrderDaoImpl implements OrderDao {
 
+    private static final String DAO_NAME = "OrderDao";
+
+    private final MetricsRecorder metrics;
+
     @Override
-    public Uni<List<Order>> findAllByUserName(PgPool pool, String userName, int pageSize, int page) {
-        return pool.preparedQuery("SELECT * FROM orders WHERE username=$1 ORDER BY created_at DESC LIMIT $2 OFFSET $3")
+    public Uni<List<Order>> findAllByUserName(SqlClient client, String userName, int pageSize, int page) {
+        return client
+                .preparedQuery(
+                        "SELECT * FROM orders WHERE username=$1 ORDER BY created_at DESC, id DESC LIMIT $2 OFFSET $3")
                 .execute(Tuple.of(userName, pageSize, pageSize * (page - 1)))
                 .map(rowSet -> {
-                    final var result = new ArrayList<Order>(pageSize);
+                    final List<Order> result = new ArrayList<>(pageSize);
                     final var rowSetIterator = rowSet.iterator();
                     while (rowSetIterator.hasNext()) {
                         result.add(mapRow(rowSetIterator.next()));
                     }
                     return result;
-                });
+                })
+                .plug(metrics.queryTimer(DAO_NAME, "findAllByUserName"));
     }
 
     @Override
-    public Uni<Order> findById(PgPool pool, UUID id) {
-        return pool.preparedQuery("SELECT * FROM orders WHERE id=$1")
+    public Uni<List<Order>> findAllByUserNameAfter(SqlClient client, String userName, OrderCursor after, int pageSize) {
+        return client
+                .preparedQuery(
+                        "SELECT * FROM orders WHERE username=$1 AND (created_at, id) < ($2, $3) ORDER BY created_at DESC, id DESC LIMIT $4")
+                .execute(Tuple.of(userName, after.getCreatedAt(), after.getId(), pageSize))
+                .map(rowSet -> {
+                    final List<Order> result = new ArrayList<>(pageSize);
+                    final var rowSetIterator = rowSet.iterator();
+                    while (rowSetIterator.hasNext()) {
+                        result.add(mapRow(rowSetIterator.next()));
+                    }
+                    return result;
+                })
+                .plug(metrics.queryTimer(DAO_NAME, "findAllByUserNameAfter"));
+    }
+
+    @Override
+    public Uni<Order> findById(SqlClient client, UUID id) {
+        return client.preparedQuery("SELECT * FROM orders WHERE id=$1")
                 .execute(Tuple.of(id))
                 .map(rowSet -> {
                     final var rowSetIterator = rowSet.iterator();
@@ -45,40 +77,75 @@ public class OrderDaoImpl implements OrderDao {
                         throw new NoSuchElementException("order not found, id=" + id);
                     }
                     return mapRow(rowSetIterator.next());
-                });
+                })
+                .plug(metrics.queryTimer(DAO_NAME, "findById"));
     }
 
     @Override
-    public Uni<Void> insert(PgPool pool, UUID id, String userName, LocalDateTime createdAt) {
-        return pool.preparedQuery("INSERT INTO orders(id, username, created_at, updated_at) VALUES($1, $2, $3, $4)")
+    public Uni<Void> insert(SqlClient client, UUID id, String userName, LocalDateTime createdAt) {
+        return client.preparedQuery("INSERT INTO orders(id, username, created_at, updated_at) VALUES($1, $2, $3, $4)")
                 .execute(Tuple.of(id, userName, createdAt, createdAt))
                 .flatMap(rowSet -> {
                     if (rowSet.rowCount() != 1) {
                         throw new DaoException("order insertion failed");
                     }
                     return Uni.createFrom().voidItem();
-                });
+                })
+                .plug(metrics.queryTimer(DAO_NAME, "insert"));
     }
 
     @Override
-    public Uni<Void> updateStatus(PgPool pool, UUID id, OrderStatus status) {
-        return pool.preparedQuery("UPDATE orders SET status=$1, updated_at=$2 WHERE id=$3")
-                .execute(Tuple.of(status, LocalDateTime.now(), id))
+    public Uni<Void> updateStatus(SqlClient client, UUID id, long version, OrderStatus expectedStatus,
+            OrderStatus targetStatus) {
+        return client
+                .preparedQuery(
+                        "UPDATE orders SET status=$1, updated_at=$2, version=version+1 WHERE id=$3 AND version=$4 AND status=$5")
+                .execute(Tuple.of(targetStatus.name(), LocalDateTime.now(), id, version, expectedStatus.name()))
                 .flatMap(rowSet -> {
                     if (rowSet.rowCount() != 1) {
-                        throw new DaoException("order status update failed");
+                        throw new OrderConcurrentlyModifiedException(id);
                     }
                     return Uni.createFrom().voidItem();
-                });
+                })
+                .plug(metrics.queryTimer(DAO_NAME, "updateStatus"));
+    }
+
+    @Override
+    public Uni<Boolean> touch(SqlClient client, UUID id, OrderStatus expectedStatus) {
+        return client
+                .preparedQuery("UPDATE orders SET updated_at=$1, version=version+1 WHERE id=$2 AND status=$3")
+                .execute(Tuple.of(LocalDateTime.now(), id, expectedStatus.name()))
+                .map(rowSet -> rowSet.rowCount() == 1)
+                .plug(metrics.queryTimer(DAO_NAME, "touch"));
+    }
+
+    @Override
+    public Uni<Boolean> transitionStatus(SqlClient client, UUID id, String userName, Long version,
+            Set<OrderStatus> expectedStatuses, OrderStatusChange statusChange) {
+        return client
+                .preparedQuery("WITH upd AS ("
+                        + "UPDATE orders SET status=$1, updated_at=$2, version=version+1 "
+                        + "WHERE id=$3 AND username=$4 AND status=ANY($5) AND ($6::bigint IS NULL OR version=$6) "
+                        + "RETURNING id) "
+                        + "INSERT INTO order_status_changes(id, order_id, status, created_at) "
+                        + "SELECT $7, id, $1, $2 FROM upd")
+                .execute(Tuple.tuple(Arrays.asList(statusChange.getStatus().name(), statusChange.getCreatedAt(), id,
+                        userName, expectedStatuses.stream().map(OrderStatus::name).toArray(String[]::new), version,
+                        UUID.randomUUID())))
+                .map(rowSet -> rowSet.rowCount() == 1)
+                .plug(metrics.queryTimer(DAO_NAME, "transitionStatus"));
     }
 
-    private static Order mapRow(Row row) {
+    protected static Order mapRow(Row row) {
         return Order.builder()
                 .id(row.getUUID("id"))
                 .userName(row.getString("username"))
                 .status(OrderStatus.valueOf(row.getString("status")))
                 .createdAt(row.getLocalDateTime("created_at"))
                 .updatedAt(row.getLocalDateTime("updated_at"))
+                .version(row.getLong("version"))
+                .totalAmount(row.getBigDecimal("total_amount"))
+                .positionCount(row.getInteger("position_count"))
                 .build();
     }
 }
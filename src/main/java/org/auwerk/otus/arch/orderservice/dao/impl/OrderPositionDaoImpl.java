@@ -2,7 +2,10 @@ package org.auwerk.otus.arch.orderservice.dao.impl;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.UUID;
 
@@ -11,18 +14,25 @@ import javax.enterprise.context.ApplicationScoped;
 import org.auwerk.otus.arch.orderservice.dao.OrderPositionDao;
 import org.auwerk.otus.arch.orderservice.domain.OrderPosition;
 import org.auwerk.otus.arch.orderservice.exception.DaoException;
+import org.auwerk.otus.arch.orderservice.metrics.MetricsRecorder;
 
 import io.smallrye.mutiny.Uni;
-import io.vertx.mutiny.pgclient.PgPool;
 import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.SqlClient;
 import io.vertx.mutiny.sqlclient.Tuple;
+import lombok.RequiredArgsConstructor;
 
 @ApplicationScoped
+@RequiredArgsConstructor
 public class OrderPositionDaoImpl implements OrderPositionDao {
 
+    private static final String DAO_NAME = "OrderPositionDao";
+
+    private final MetricsRecorder metrics;
+
     @Override
-    public Uni<OrderPosition> findById(PgPool pool, UUID id) {
-        return pool.preparedQuery("SELECT * FROM order_positions WHERE id=$1")
+    public Uni<OrderPosition> findById(SqlClient client, UUID id) {
+        return client.preparedQuery("SELECT * FROM order_positions WHERE id=$1")
                 .execute(Tuple.of(id))
                 .map(rowSet -> {
                     final var rowSetIterator = rowSet.iterator();
@@ -30,28 +40,53 @@ public class OrderPositionDaoImpl implements OrderPositionDao {
                         throw new NoSuchElementException("order position not found, id=" + id);
                     }
                     return mapRow(rowSetIterator.next());
-                });
+                })
+                .plug(metrics.queryTimer(DAO_NAME, "findById"));
     }
 
     @Override
-    public Uni<List<OrderPosition>> findAllByOrderId(PgPool pool, UUID orderId) {
-        return pool.preparedQuery("SELECT * FROM order_positions WHERE order_id=$1")
+    public Uni<List<OrderPosition>> findAllByOrderId(SqlClient client, UUID orderId) {
+        return client.preparedQuery("SELECT * FROM order_positions WHERE order_id=$1")
                 .execute(Tuple.of(orderId))
                 .map(rowSet -> {
-                    final var result = new ArrayList<OrderPosition>(rowSet.rowCount());
+                    final List<OrderPosition> result = new ArrayList<>(rowSet.rowCount());
                     final var rowSetIterator = rowSet.iterator();
                     while (rowSetIterator.hasNext()) {
                         result.add(mapRow(rowSetIterator.next()));
                     }
                     return result;
-                });
+                })
+                .plug(metrics.queryTimer(DAO_NAME, "findAllByOrderId"));
     }
 
     @Override
-    public Uni<UUID> insert(PgPool pool, OrderPosition position) {
-        return pool
+    public Uni<List<OrderPosition>> findAllByOrderIds(SqlClient client, List<UUID> orderIds) {
+        return client.preparedQuery("SELECT * FROM order_positions WHERE order_id = ANY($1)")
+                .execute(Tuple.of(orderIds.toArray(UUID[]::new)))
+                .map(rowSet -> {
+                    final List<OrderPosition> result = new ArrayList<>(rowSet.rowCount());
+                    final var rowSetIterator = rowSet.iterator();
+                    while (rowSetIterator.hasNext()) {
+                        result.add(mapRow(rowSetIterator.next()));
+                    }
+                    return result;
+                })
+                .plug(metrics.queryTimer(DAO_NAME, "findAllByOrderIds"));
+    }
+
+    @Override
+    public Uni<UUID> upsert(SqlClient client, OrderPosition position) {
+        // xmax is zero only for a freshly inserted row, so it tells an insert from a quantity increase
+        return client
                 .preparedQuery(
-                        "INSERT INTO order_positions(id, order_id, product_code, quantity, price) VALUES($1, $2, $3, $4, $5) RETURNING id")
+                        "WITH pos AS (INSERT INTO order_positions(id, order_id, product_code, quantity, price) "
+                                + "VALUES($1, $2, $3, $4, $5) ON CONFLICT (order_id, product_code) "
+                                + "DO UPDATE SET quantity=order_positions.quantity + EXCLUDED.quantity "
+                                + "RETURNING id, order_id, price, xmax = 0 AS inserted), "
+                                + "totals AS (UPDATE orders o SET total_amount=o.total_amount + coalesce(pos.price, 0) * $4, "
+                                + "position_count=o.position_count + CASE WHEN pos.inserted THEN 1 ELSE 0 END "
+                                + "FROM pos WHERE o.id=pos.order_id) "
+                                + "SELECT id FROM pos")
                 .execute(Tuple.of(UUID.randomUUID(), position.getOrderId(), position.getProductCode(), position.getQuantity(),
                         position.getPrice()))
                 .map(rowSet -> {
@@ -59,34 +94,124 @@ public class OrderPositionDaoImpl implements OrderPositionDao {
                         throw new DaoException("order position insertion failed");
                     }
                     return rowSet.iterator().next().getUUID("id");
-                });
+                })
+                .plug(metrics.queryTimer(DAO_NAME, "upsert"));
     }
 
     @Override
-    public Uni<Void> updatePriceById(PgPool pool, UUID id, BigDecimal price) {
-        return pool.preparedQuery("UPDATE order_positions SET price=$1 WHERE id=$2")
-                .execute(Tuple.of(price, id))
+    public Uni<List<UUID>> upsertAll(SqlClient client, List<OrderPosition> positions) {
+        if (positions.isEmpty()) {
+            return Uni.createFrom().item(List.of());
+        }
+        // A single statement can not update the same row twice, so lines of one product are summed up front
+        final var merged = new LinkedHashMap<PositionKey, OrderPosition>();
+        for (final var position : positions) {
+            merged.merge(PositionKey.of(position), position, (existing, added) -> OrderPosition.builder()
+                    .orderId(existing.getOrderId())
+                    .productCode(existing.getProductCode())
+                    .quantity(existing.getQuantity() + added.getQuantity())
+                    .price(existing.getPrice())
+                    .build());
+        }
+        final var ids = new UUID[merged.size()];
+        final var orderIds = new UUID[merged.size()];
+        final var productCodes = new String[merged.size()];
+        final var quantities = new Long[merged.size()];
+        final var prices = new BigDecimal[merged.size()];
+        var index = 0;
+        for (final var position : merged.values()) {
+            ids[index] = UUID.randomUUID();
+            orderIds[index] = position.getOrderId();
+            productCodes[index] = position.getProductCode();
+            quantities[index] = position.getQuantity().longValue();
+            prices[index] = position.getPrice();
+            index++;
+        }
+        return client
+                .preparedQuery(
+                        "WITH v AS (SELECT * FROM unnest($1::uuid[], $2::uuid[], $3::varchar[], $4::bigint[], $5::numeric[]) "
+                                + "AS v(id, order_id, product_code, quantity, price)), "
+                                + "pos AS (INSERT INTO order_positions(id, order_id, product_code, quantity, price) "
+                                + "SELECT id, order_id, product_code, quantity, price FROM v "
+                                + "ON CONFLICT (order_id, product_code) "
+                                + "DO UPDATE SET quantity=order_positions.quantity + EXCLUDED.quantity "
+                                + "RETURNING id, order_id, product_code, price, xmax = 0 AS inserted), "
+                                + "totals AS (UPDATE orders o SET total_amount=o.total_amount + d.amount, "
+                                + "position_count=o.position_count + d.added "
+                                + "FROM (SELECT pos.order_id, sum(coalesce(pos.price, 0) * v.quantity) AS amount, "
+                                + "count(*) FILTER (WHERE pos.inserted) AS added FROM pos "
+                                + "JOIN v ON v.order_id=pos.order_id AND v.product_code=pos.product_code "
+                                + "GROUP BY pos.order_id) d WHERE o.id=d.order_id) "
+                                + "SELECT id, order_id, product_code FROM pos")
+                .execute(Tuple.of(ids, orderIds, productCodes, quantities, prices))
+                .map(rowSet -> {
+                    if (rowSet.rowCount() != merged.size()) {
+                        throw new DaoException("order positions insertion failed, expected=" + merged.size()
+                                + ", inserted=" + rowSet.rowCount());
+                    }
+                    final var idsByKey = new HashMap<PositionKey, UUID>();
+                    for (final var row : rowSet) {
+                        idsByKey.put(new PositionKey(row.getUUID("order_id"), row.getString("product_code")),
+                                row.getUUID("id"));
+                    }
+                    return positions.stream()
+                            .map(position -> idsByKey.get(PositionKey.of(position)))
+                            .toList();
+                })
+                .plug(metrics.queryTimer(DAO_NAME, "upsertAll"));
+    }
+
+    @Override
+    public Uni<Void> updatePrices(SqlClient client, Map<UUID, BigDecimal> pricesById) {
+        if (pricesById.isEmpty()) {
+            return Uni.createFrom().voidItem();
+        }
+        final var ids = new UUID[pricesById.size()];
+        final var prices = new BigDecimal[pricesById.size()];
+        var index = 0;
+        for (final var entry : pricesById.entrySet()) {
+            ids[index] = entry.getKey();
+            prices[index] = entry.getValue();
+            index++;
+        }
+        return client
+                .preparedQuery(
+                        "WITH pos AS (UPDATE order_positions p SET price=v.price "
+                                + "FROM (SELECT unnest($1::uuid[]) AS id, unnest($2::numeric[]) AS price) v, order_positions old "
+                                + "WHERE p.id=v.id AND old.id=p.id "
+                                + "RETURNING p.order_id, p.quantity * (coalesce(p.price, 0) - coalesce(old.price, 0)) AS delta), "
+                                + "totals AS (UPDATE orders o SET total_amount=o.total_amount + d.delta "
+                                + "FROM (SELECT order_id, sum(delta) AS delta FROM pos GROUP BY order_id) d WHERE o.id=d.order_id) "
+                                + "SELECT count(*) AS updated FROM pos")
+                .execute(Tuple.of(ids, prices))
                 .invoke(rowSet -> {
-                    if (rowSet.rowCount() != 1) {
-                        throw new DaoException("order position price update failed, id=" + id);
+                    final var updated = rowSet.iterator().next().getLong("updated");
+                    if (updated != pricesById.size()) {
+                        throw new DaoException("order positions price update failed, expected=" + pricesById.size()
+                                + ", updated=" + updated);
                     }
                 })
-                .replaceWithVoid();
+                .replaceWithVoid()
+                .plug(metrics.queryTimer(DAO_NAME, "updatePrices"));
     }
 
     @Override
-    public Uni<Void> deleteById(PgPool pool, UUID id) {
-        return pool.preparedQuery("DELETE FROM order_positions WHERE id=$1")
+    public Uni<Void> deleteById(SqlClient client, UUID id) {
+        return client
+                .preparedQuery("WITH pos AS (DELETE FROM order_positions WHERE id=$1 RETURNING order_id, quantity, price) "
+                        + "UPDATE orders o SET total_amount=o.total_amount - coalesce(pos.price, 0) * pos.quantity, "
+                        + "position_count=o.position_count - 1 FROM pos WHERE o.id=pos.order_id")
                 .execute(Tuple.of(id))
                 .flatMap(rowSet -> {
                     if (rowSet.rowCount() != 1) {
                         throw new DaoException("order position deletion failed");
                     }
                     return Uni.createFrom().voidItem();
-                });
+                })
+                .plug(metrics.queryTimer(DAO_NAME, "deleteById"));
     }
 
-    private static OrderPosition mapRow(Row row) {
+    protected static OrderPosition mapRow(Row row) {
         return OrderPosition.builder()
                 .id(row.getUUID("id"))
                 .orderId(row.getUUID("order_id"))
@@ -95,4 +220,11 @@ public class OrderPositionDaoImpl implements OrderPositionDao {
                 .price(row.getBigDecimal("price"))
                 .build();
     }
+
+    private static record PositionKey(UUID orderId, String productCode) {
+
+        static PositionKey of(OrderPosition position) {
+            return new PositionKey(position.getOrderId(), position.getProductCode());
+        }
+    }
 }
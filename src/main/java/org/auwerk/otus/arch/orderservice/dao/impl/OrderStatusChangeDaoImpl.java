@@ -10,32 +10,55 @@ import org.auwerk.otus.arch.orderservice.dao.OrderStatusChangeDao;
 import org.auwerk.otus.arch.orderservice.domain.OrderStatus;
 import org.auwerk.otus.arch.orderservice.domain.OrderStatusChange;
 import org.auwerk.otus.arch.orderservice.exception.DaoException;
+import org.auwerk.otus.arch.orderservice.metrics.MetricsRecorder;
 
 import io.smallrye.mutiny.Uni;
-import io.vertx.mutiny.pgclient.PgPool;
 import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.SqlClient;
 import io.vertx.mutiny.sqlclient.Tuple;
+import lombok.RequiredArgsConstructor;
 
 @ApplicationScoped
+@RequiredArgsConstructor
 public class OrderStatusChangeDaoImpl implements OrderStatusChangeDao {
 
+    private static final String DAO_NAME = "OrderStatusChangeDao";
+
+    private final MetricsRecorder metrics;
+
     @Override
-    public Uni<List<OrderStatusChange>> findAllByOrderId(PgPool pool, UUID orderId) {
-        return pool.preparedQuery("SELECT * FROM order_status_changes WHERE order_id=$1 ORDER BY created_at DESC")
+    public Uni<List<OrderStatusChange>> findAllByOrderId(SqlClient client, UUID orderId) {
+        return client.preparedQuery("SELECT * FROM order_status_changes WHERE order_id=$1 ORDER BY created_at DESC")
                 .execute(Tuple.of(orderId))
                 .map(rowSet -> {
-                    final var result = new ArrayList<OrderStatusChange>(rowSet.rowCount());
+                    final List<OrderStatusChange> result = new ArrayList<>(rowSet.rowCount());
+                    final var rowSetIterator = rowSet.iterator();
+                    while (rowSetIterator.hasNext()) {
+                        result.add(mapRow(rowSetIterator.next()));
+                    }
+                    return result;
+                })
+                .plug(metrics.queryTimer(DAO_NAME, "findAllByOrderId"));
+    }
+
+    @Override
+    public Uni<List<OrderStatusChange>> findAllByOrderIds(SqlClient client, List<UUID> orderIds) {
+        return client.preparedQuery("SELECT * FROM order_status_changes WHERE order_id = ANY($1) ORDER BY created_at DESC")
+                .execute(Tuple.of(orderIds.toArray(UUID[]::new)))
+                .map(rowSet -> {
+                    final List<OrderStatusChange> result = new ArrayList<>(rowSet.rowCount());
                     final var rowSetIterator = rowSet.iterator();
                     while (rowSetIterator.hasNext()) {
                         result.add(mapRow(rowSetIterator.next()));
                     }
                     return result;
-                });
+                })
+                .plug(metrics.queryTimer(DAO_NAME, "findAllByOrderIds"));
     }
 
     @Override
-    public Uni<Void> insert(PgPool pool, UUID orderId, OrderStatusChange statusChange) {
-        return pool
+    public Uni<Void> insert(SqlClient client, UUID orderId, OrderStatusChange statusChange) {
+        return client
                 .preparedQuery(
                         "INSERT INTO order_status_changes(id, order_id, status, created_at) VALUES($1, $2, $3, $4)")
                 .execute(Tuple.of(UUID.randomUUID(), orderId, statusChange.getStatus().name(),
@@ -45,11 +68,13 @@ public class OrderStatusChangeDaoImpl implements OrderStatusChangeDao {
                         throw new DaoException("insertion failed");
                     }
                     return Uni.createFrom().voidItem();
-                });
+                })
+                .plug(metrics.queryTimer(DAO_NAME, "insert"));
     }
 
-    private static OrderStatusChange mapRow(Row row) {
+    protected static OrderStatusChange mapRow(Row row) {
         return OrderStatusChange.builder()
+                .orderId(row.getUUID("order_id"))
                 .status(OrderStatus.valueOf(row.getString("status")))
                 .createdAt(row.getLocalDateTime("created_at"))
                 .build();
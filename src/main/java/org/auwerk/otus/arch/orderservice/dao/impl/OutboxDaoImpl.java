@@ -0,0 +1,99 @@
+package org.auwerk.otus.arch.orderservice.dao.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import org.auwerk.otus.arch.orderservice.dao.OutboxDao;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatus;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatusChange;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatusEvent;
+import org.auwerk.otus.arch.orderservice.exception.DaoException;
+import org.auwerk.otus.arch.orderservice.metrics.MetricsRecorder;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.SqlClient;
+import io.vertx.mutiny.sqlclient.Tuple;
+import lombok.RequiredArgsConstructor;
+
+@ApplicationScoped
+@RequiredArgsConstructor
+public class OutboxDaoImpl implements OutboxDao {
+
+    private static final String DAO_NAME = "OutboxDao";
+
+    /**
+     * Ключ advisory-блокировки публикации событий
+     */
+    private static final long RELAY_LOCK_KEY = 0x6f75746278L;
+
+    private final MetricsRecorder metrics;
+
+    @Override
+    public Uni<Void> insert(SqlClient client, UUID orderId, OrderStatusChange statusChange) {
+        return client
+                .preparedQuery("WITH event AS ("
+                        + "INSERT INTO order_status_outbox(order_id, status, created_at) VALUES($1, $2, $3) "
+                        + "RETURNING id, order_id, status, created_at) "
+                        + "SELECT pg_notify($4, json_build_object('id', id, 'orderId', order_id, "
+                        + "'status', status, 'createdAt', created_at)::text) FROM event")
+                .execute(Tuple.of(orderId, statusChange.getStatus().name(),
+                        statusChange.getCreatedAt(), ORDER_STATUS_CHANNEL))
+                .invoke(rowSet -> {
+                    if (rowSet.rowCount() != 1) {
+                        throw new DaoException("outbox insertion failed, orderId=" + orderId);
+                    }
+                })
+                .replaceWithVoid()
+                .plug(metrics.queryTimer(DAO_NAME, "insert"));
+    }
+
+    @Override
+    public Uni<Boolean> tryLockRelay(SqlClient client) {
+        return client.preparedQuery("SELECT pg_try_advisory_xact_lock($1) AS locked")
+                .execute(Tuple.of(RELAY_LOCK_KEY))
+                .map(rowSet -> rowSet.iterator().next().getBoolean("locked"))
+                .plug(metrics.queryTimer(DAO_NAME, "tryLockRelay"));
+    }
+
+    @Override
+    public Uni<List<OrderStatusEvent>> findOldest(SqlClient client, int limit) {
+        return client.preparedQuery("SELECT * FROM order_status_outbox ORDER BY id LIMIT $1")
+                .execute(Tuple.of(limit))
+                .map(rowSet -> {
+                    final List<OrderStatusEvent> result = new ArrayList<>(rowSet.rowCount());
+                    final var rowSetIterator = rowSet.iterator();
+                    while (rowSetIterator.hasNext()) {
+                        result.add(mapRow(rowSetIterator.next()));
+                    }
+                    return result;
+                })
+                .plug(metrics.queryTimer(DAO_NAME, "findOldest"));
+    }
+
+    @Override
+    public Uni<Void> deleteByIds(SqlClient client, List<Long> ids) {
+        return client.preparedQuery("DELETE FROM order_status_outbox WHERE id = ANY($1)")
+                .execute(Tuple.of(ids.toArray(Long[]::new)))
+                .invoke(rowSet -> {
+                    if (rowSet.rowCount() != ids.size()) {
+                        throw new DaoException("outbox deletion failed, expected=" + ids.size()
+                                + ", deleted=" + rowSet.rowCount());
+                    }
+                })
+                .replaceWithVoid()
+                .plug(metrics.queryTimer(DAO_NAME, "deleteByIds"));
+    }
+
+    protected static OrderStatusEvent mapRow(Row row) {
+        return OrderStatusEvent.builder()
+                .id(row.getLong("id"))
+                .orderId(row.getUUID("order_id"))
+                .status(OrderStatus.valueOf(row.getString("status")))
+                .createdAt(row.getLocalDateTime("created_at"))
+                .build();
+    }
+}
@@ -0,0 +1,128 @@
+package org.auwerk.otus.arch.orderservice.dao.impl;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import org.auwerk.otus.arch.orderservice.dao.SagaLogDao;
+import org.auwerk.otus.arch.orderservice.domain.SagaExecution;
+import org.auwerk.otus.arch.orderservice.domain.SagaStatus;
+import org.auwerk.otus.arch.orderservice.domain.SagaStep;
+import org.auwerk.otus.arch.orderservice.domain.SagaStepEvent;
+import org.auwerk.otus.arch.orderservice.exception.DaoException;
+import org.auwerk.otus.arch.orderservice.metrics.MetricsRecorder;
+
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.SqlClient;
+import io.vertx.mutiny.sqlclient.Tuple;
+import lombok.RequiredArgsConstructor;
+
+@ApplicationScoped
+@RequiredArgsConstructor
+public class SagaLogDaoImpl implements SagaLogDao {
+
+    private static final String DAO_NAME = "SagaLogDao";
+
+    private final MetricsRecorder metrics;
+
+    @Override
+    public Uni<Void> insertExecution(SqlClient client, SagaExecution execution) {
+        return client
+                .preparedQuery(
+                        "INSERT INTO saga_executions(id, saga, order_id, status, created_at, updated_at) VALUES($1, $2, $3, $4, $5, $6)")
+                .execute(Tuple.of(execution.getId(), execution.getSaga(), execution.getOrderId(),
+                        execution.getStatus().name(), execution.getCreatedAt(), execution.getUpdatedAt()))
+                .invoke(rowSet -> {
+                    if (rowSet.rowCount() != 1) {
+                        throw new DaoException("saga execution insertion failed, id=" + execution.getId());
+                    }
+                })
+                .replaceWithVoid()
+                .plug(metrics.queryTimer(DAO_NAME, "insertExecution"));
+    }
+
+    @Override
+    public Uni<Void> updateExecutionStatus(SqlClient client, UUID id, SagaStatus status) {
+        return client.preparedQuery("UPDATE saga_executions SET status=$1, updated_at=$2 WHERE id=$3")
+                .execute(Tuple.of(status.name(), LocalDateTime.now(), id))
+                .invoke(rowSet -> {
+                    if (rowSet.rowCount() != 1) {
+                        throw new DaoException("saga execution status update failed, id=" + id);
+                    }
+                })
+                .replaceWithVoid()
+                .plug(metrics.queryTimer(DAO_NAME, "updateExecutionStatus"));
+    }
+
+    @Override
+    public Uni<Optional<SagaExecution>> lockStaleExecution(SqlClient client, LocalDateTime updatedBefore,
+            List<UUID> excludedIds) {
+        return client
+                .preparedQuery(
+                        "SELECT * FROM saga_executions WHERE status=$1 AND updated_at < $2 AND NOT (id = ANY($3)) ORDER BY updated_at LIMIT 1 FOR NO KEY UPDATE SKIP LOCKED")
+                .execute(Tuple.of(SagaStatus.RUNNING.name(), updatedBefore, excludedIds.toArray(UUID[]::new)))
+                .map(rowSet -> {
+                    final var rowSetIterator = rowSet.iterator();
+                    if (!rowSetIterator.hasNext()) {
+                        return Optional.<SagaExecution>empty();
+                    }
+                    return Optional.of(mapExecutionRow(rowSetIterator.next()));
+                })
+                .plug(metrics.queryTimer(DAO_NAME, "lockStaleExecution"));
+    }
+
+    @Override
+    public Uni<List<SagaStep>> findStepsBySagaId(SqlClient client, UUID sagaId) {
+        return client.preparedQuery("SELECT * FROM saga_steps WHERE saga_id=$1 ORDER BY id")
+                .execute(Tuple.of(sagaId))
+                .map(rowSet -> {
+                    final List<SagaStep> result = new ArrayList<>(rowSet.rowCount());
+                    final var rowSetIterator = rowSet.iterator();
+                    while (rowSetIterator.hasNext()) {
+                        result.add(mapStepRow(rowSetIterator.next()));
+                    }
+                    return result;
+                })
+                .plug(metrics.queryTimer(DAO_NAME, "findStepsBySagaId"));
+    }
+
+    @Override
+    public Uni<Void> insertSteps(SqlClient client, List<SagaStep> steps) {
+        final var batch = steps.stream()
+                .map(step -> Tuple.of(step.getSagaId(), step.getStep(), step.getEvent().name(),
+                        step.getResourceIds().toArray(UUID[]::new), step.getCreatedAt()))
+                .toList();
+        return client
+                .preparedQuery(
+                        "INSERT INTO saga_steps(saga_id, step, event, resource_ids, created_at) VALUES($1, $2, $3, $4, $5)")
+                .executeBatch(batch)
+                .replaceWithVoid()
+                .plug(metrics.queryTimer(DAO_NAME, "insertSteps"));
+    }
+
+    protected static SagaExecution mapExecutionRow(Row row) {
+        return SagaExecution.builder()
+                .id(row.getUUID("id"))
+                .saga(row.getString("saga"))
+                .orderId(row.getUUID("order_id"))
+                .status(SagaStatus.valueOf(row.getString("status")))
+                .createdAt(row.getLocalDateTime("created_at"))
+                .updatedAt(row.getLocalDateTime("updated_at"))
+                .build();
+    }
+
+    protected static SagaStep mapStepRow(Row row) {
+        return SagaStep.builder()
+                .sagaId(row.getUUID("saga_id"))
+                .step(row.getString("step"))
+                .event(SagaStepEvent.valueOf(row.getString("event")))
+                .resourceIds(List.of(row.getArrayOfUUIDs("resource_ids")))
+                .createdAt(row.getLocalDateTime("created_at"))
+                .build();
+    }
+}
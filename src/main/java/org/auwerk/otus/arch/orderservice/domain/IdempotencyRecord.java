@@ -0,0 +1,23 @@
+package org.auwerk.otus.arch.orderservice.domain;
+
+import java.time.LocalDateTime;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class IdempotencyRecord {
+    private String userName;
+    private String key;
+    /**
+     * Описание запроса; повтор с тем же ключом должен совпадать с исходным
+     * запросом
+     */
+    private String fingerprint;
+    /**
+     * Сохраненный ответ; отсутствует, пока запрос выполняется
+     */
+    private IdempotentResponse response;
+    private LocalDateTime createdAt;
+}
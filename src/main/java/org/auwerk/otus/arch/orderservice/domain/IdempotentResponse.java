@@ -0,0 +1,14 @@
+package org.auwerk.otus.arch.orderservice.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Ответ на запрос с ключом идемпотентности, возвращаемый при повторе запроса
+ */
+@Data
+@AllArgsConstructor
+public class IdempotentResponse {
+    private int statusCode;
+    private String body;
+}
@@ -1,5 +1,6 @@
 package org.auwerk.otus.arch.orderservice.domain;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.UUID;
@@ -15,6 +16,12 @@ public class Order {
     private OrderStatus status;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+    /**
+     * Версия заказа, увеличивается при каждом изменении
+     */
+    private long version;
+    private BigDecimal totalAmount;
+    private int positionCount;
     private List<OrderPosition> positions;
     private List<OrderStatusChange> statusChanges;
 }
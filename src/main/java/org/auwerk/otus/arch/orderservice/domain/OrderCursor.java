@@ -0,0 +1,59 @@
+package org.auwerk.otus.arch.orderservice.domain;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+import org.auwerk.otus.arch.orderservice.exception.InvalidOrderCursorException;
+
+import lombok.Value;
+
+/**
+ * Позиция в списке заказов пользователя для постраничной выборки по ключу
+ * (created_at, id)
+ */
+@Value
+public class OrderCursor {
+
+    private static final String SEPARATOR = "|";
+
+    LocalDateTime createdAt;
+    UUID id;
+
+    public static OrderCursor of(Order order) {
+        return new OrderCursor(order.getCreatedAt(), order.getId());
+    }
+
+    /**
+     * Кодирование курсора в непрозрачный для клиента токен
+     * 
+     * @return токен курсора
+     */
+    public String encode() {
+        final var value = createdAt + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Восстановление курсора из токена, полученного от клиента
+     * 
+     * @param token токен курсора
+     * @return курсор
+     */
+    public static OrderCursor decode(String token) {
+        try {
+            final var value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            final var separatorIndex = value.indexOf(SEPARATOR);
+            if (separatorIndex < 0) {
+                throw new InvalidOrderCursorException(token);
+            }
+            return new OrderCursor(LocalDateTime.parse(value.substring(0, separatorIndex)),
+                    UUID.fromString(value.substring(separatorIndex + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException ex) {
+            throw new InvalidOrderCursorException(token);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.auwerk.otus.arch.orderservice.domain;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.auwerk.otus.arch.orderservice.exception.InvalidOrderExpandException;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Детали заказа, загружаемые отдельными запросами вместе со списком заказов
+ */
+@RequiredArgsConstructor
+public enum OrderDetail {
+    /**
+     * Позиции заказа
+     */
+    POSITIONS("positions"),
+    /**
+     * История смены статусов заказа
+     */
+    STATUS_CHANGES("statusChanges");
+
+    private static final String SEPARATOR = ",";
+
+    /**
+     * Имя поля заказа, в которое загружается деталь
+     */
+    @Getter
+    private final String fieldName;
+
+    /**
+     * Разбор списка деталей, перечисленных клиентом через запятую
+     * 
+     * @param expand имена полей деталей; null - все детали
+     * @return детали заказа
+     */
+    public static Set<OrderDetail> parse(String expand) {
+        if (expand == null) {
+            return EnumSet.allOf(OrderDetail.class);
+        }
+        final var result = EnumSet.noneOf(OrderDetail.class);
+        for (final var fieldName : expand.split(SEPARATOR)) {
+            if (fieldName.isBlank()) {
+                continue;
+            }
+            result.add(fromFieldName(fieldName.trim(), expand));
+        }
+        return result;
+    }
+
+    private static OrderDetail fromFieldName(String fieldName, String expand) {
+        for (final var detail : values()) {
+            if (detail.fieldName.equals(fieldName)) {
+                return detail;
+            }
+        }
+        throw new InvalidOrderExpandException(expand);
+    }
+}
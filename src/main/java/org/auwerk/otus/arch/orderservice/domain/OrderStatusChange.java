@@ -1,6 +1,7 @@
 package org.auwerk.otus.arch.orderservice.domain;
 
 import java.time.LocalDateTime;
+import java.util.UUID;
 
 import lombok.Builder;
 import lombok.Data;
@@ -8,6 +9,7 @@ import lombok.Data;
 @Data
 @Builder
 public class OrderStatusChange {
+    private UUID orderId;
     private OrderStatus status;
     private LocalDateTime createdAt;
 }
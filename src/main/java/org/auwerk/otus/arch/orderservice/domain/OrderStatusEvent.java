@@ -0,0 +1,26 @@
+package org.auwerk.otus.arch.orderservice.domain;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Событие смены статуса заказа, публикуемое через outbox
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderStatusEvent {
+    /**
+     * Порядковый номер события в outbox
+     */
+    private Long id;
+    private UUID orderId;
+    private OrderStatus status;
+    private LocalDateTime createdAt;
+}
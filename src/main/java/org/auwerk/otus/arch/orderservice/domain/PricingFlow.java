@@ -0,0 +1,15 @@
+package org.auwerk.otus.arch.orderservice.domain;
+
+/**
+ * Сценарий, в рамках которого запрашивается цена продукта
+ */
+public enum PricingFlow {
+    /**
+     * Добавление позиции в заказ
+     */
+    ORDER_POSITION,
+    /**
+     * Окончательная фиксация цен при размещении заказа
+     */
+    ORDER_PLACEMENT
+}
@@ -0,0 +1,18 @@
+package org.auwerk.otus.arch.orderservice.domain;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class SagaExecution {
+    private UUID id;
+    private String saga;
+    private UUID orderId;
+    private SagaStatus status;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,22 @@
+package org.auwerk.otus.arch.orderservice.domain;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class SagaStep {
+    private UUID sagaId;
+    private String step;
+    private SagaStepEvent event;
+    /**
+     * Идентификаторы ресурсов, созданных шагом (операция биллинга, лицензии),
+     * необходимые для компенсации
+     */
+    private List<UUID> resourceIds;
+    private LocalDateTime createdAt;
+}
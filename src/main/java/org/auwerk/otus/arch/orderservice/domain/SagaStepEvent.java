@@ -0,0 +1,8 @@
+package org.auwerk.otus.arch.orderservice.domain;
+
+public enum SagaStepEvent {
+    STARTED,
+    SUCCEEDED,
+    FAILED,
+    COMPENSATED
+}
@@ -0,0 +1,22 @@
+package org.auwerk.otus.arch.orderservice.exception;
+
+import lombok.Getter;
+
+public class ClientUnavailableException extends RuntimeException {
+
+    public enum Reason {
+        TIMEOUT, BULKHEAD_FULL, CIRCUIT_OPEN
+    }
+
+    @Getter
+    private final String client;
+
+    @Getter
+    private final Reason reason;
+
+    public ClientUnavailableException(String client, Reason reason) {
+        super("service unavailable, client=" + client + ", reason=" + reason);
+        this.client = client;
+        this.reason = reason;
+    }
+}
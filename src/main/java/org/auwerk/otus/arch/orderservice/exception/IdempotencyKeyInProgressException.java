@@ -0,0 +1,14 @@
+package org.auwerk.otus.arch.orderservice.exception;
+
+import lombok.Getter;
+
+public class IdempotencyKeyInProgressException extends RuntimeException {
+
+    @Getter
+    private final String key;
+
+    public IdempotencyKeyInProgressException(String key) {
+        super("request with the same idempotency key is in progress, key=" + key);
+        this.key = key;
+    }
+}
@@ -0,0 +1,14 @@
+package org.auwerk.otus.arch.orderservice.exception;
+
+import lombok.Getter;
+
+public class IdempotencyKeyMismatchException extends RuntimeException {
+
+    @Getter
+    private final String key;
+
+    public IdempotencyKeyMismatchException(String key) {
+        super("idempotency key has been used for a different request, key=" + key);
+        this.key = key;
+    }
+}
@@ -0,0 +1,14 @@
+package org.auwerk.otus.arch.orderservice.exception;
+
+import lombok.Getter;
+
+public class InvalidOrderCursorException extends RuntimeException {
+
+    @Getter
+    private final String cursor;
+
+    public InvalidOrderCursorException(String cursor) {
+        super("invalid order cursor, value=" + cursor);
+        this.cursor = cursor;
+    }
+}
@@ -0,0 +1,14 @@
+package org.auwerk.otus.arch.orderservice.exception;
+
+import lombok.Getter;
+
+public class InvalidOrderExpandException extends RuntimeException {
+
+    @Getter
+    private final String expand;
+
+    public InvalidOrderExpandException(String expand) {
+        super("invalid order expansion, value=" + expand);
+        this.expand = expand;
+    }
+}
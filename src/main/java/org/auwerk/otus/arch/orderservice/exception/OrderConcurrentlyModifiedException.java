@@ -0,0 +1,16 @@
+package org.auwerk.otus.arch.orderservice.exception;
+
+import java.util.UUID;
+
+import lombok.Getter;
+
+public class OrderConcurrentlyModifiedException extends RuntimeException {
+
+    @Getter
+    private final UUID orderId;
+
+    public OrderConcurrentlyModifiedException(UUID orderId) {
+        super("order has been modified concurrently, id=" + orderId);
+        this.orderId = orderId;
+    }
+}
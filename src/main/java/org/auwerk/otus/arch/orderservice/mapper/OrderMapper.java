@@ -3,6 +3,7 @@ package org.auwerk.otus.arch.orderservice.mapper;
 import java.util.List;
 
 import org.auwerk.otus.arch.orderservice.api.dto.OrderDto;
+import org.auwerk.otus.arch.orderservice.api.dto.OrderSummaryDto;
 import org.auwerk.otus.arch.orderservice.domain.Order;
 import org.mapstruct.InjectionStrategy;
 import org.mapstruct.Mapper;
@@ -14,4 +15,8 @@ public interface OrderMapper {
     OrderDto toDto(Order order);
 
     List<OrderDto> toDtos(List<Order> orders);
+
+    OrderSummaryDto toSummaryDto(Order order);
+
+    List<OrderSummaryDto> toSummaryDtos(List<Order> orders);
 }
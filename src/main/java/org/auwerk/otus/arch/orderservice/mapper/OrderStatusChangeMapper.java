@@ -4,6 +4,7 @@ import java.util.List;
 
 import org.auwerk.otus.arch.orderservice.api.dto.OrderStatusChangeDto;
 import org.auwerk.otus.arch.orderservice.domain.OrderStatusChange;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatusEvent;
 import org.mapstruct.Mapper;
 
 @Mapper(componentModel = "cdi")
@@ -11,5 +12,7 @@ public interface OrderStatusChangeMapper {
 
     OrderStatusChangeDto toDto(OrderStatusChange statusChange);
 
+    OrderStatusChangeDto toDto(OrderStatusEvent event);
+
     List<OrderStatusChangeDto> toDtos(List<OrderStatusChange> statusChanges);
 }
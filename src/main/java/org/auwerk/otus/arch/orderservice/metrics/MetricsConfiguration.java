@@ -0,0 +1,37 @@
+package org.auwerk.otus.arch.orderservice.metrics;
+
+import javax.enterprise.inject.Produces;
+import javax.inject.Singleton;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+
+@Singleton
+public class MetricsConfiguration {
+
+    private static final String HTTP_SERVER_REQUESTS = "http.server.requests";
+    private static final String SERVICE_METRICS_PREFIX = "otus.";
+
+    /**
+     * Гистограммы для латентности REST-эндпоинтов и таймеров сервиса, чтобы
+     * перцентили можно было агрегировать в Prometheus
+     */
+    @Produces
+    @Singleton
+    public MeterFilter enableHistograms() {
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (id.getType() == Meter.Type.TIMER && (id.getName().equals(HTTP_SERVER_REQUESTS)
+                        || id.getName().startsWith(SERVICE_METRICS_PREFIX))) {
+                    return DistributionStatisticConfig.builder()
+                            .percentilesHistogram(true)
+                            .build()
+                            .merge(config);
+                }
+                return config;
+            }
+        };
+    }
+}
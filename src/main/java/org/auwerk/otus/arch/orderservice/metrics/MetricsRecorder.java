@@ -0,0 +1,93 @@
+package org.auwerk.otus.arch.orderservice.metrics;
+
+import java.util.function.Function;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.smallrye.mutiny.Uni;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Таймеры для асинхронных операций сервиса. Время измеряется от подписки на
+ * {@link Uni} до его завершения, результат отмечается тегом outcome.
+ */
+@ApplicationScoped
+@RequiredArgsConstructor
+public class MetricsRecorder {
+
+    public static final String DB_QUERY = "otus.db.query";
+    public static final String DB_POOL_ACQUIRE = "otus.db.pool.acquire";
+    public static final String CLIENT_REQUEST = "otus.client.requests";
+    public static final String SAGA_STEP = "otus.saga.step";
+
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_FAILURE = "failure";
+    public static final String OUTCOME_CANCELLED = "cancelled";
+
+    private final MeterRegistry registry;
+
+    /**
+     * Таймер запроса DAO
+     * 
+     * @param dao       имя DAO
+     * @param statement имя метода DAO
+     */
+    public <T> Function<Uni<T>, Uni<T>> queryTimer(String dao, String statement) {
+        return timer(DB_QUERY, Tags.of("dao", dao, "statement", statement));
+    }
+
+    /**
+     * Таймер вызова внешнего сервиса
+     * 
+     * @param client    имя клиента
+     * @param operation имя операции клиента
+     */
+    public <T> Function<Uni<T>, Uni<T>> clientTimer(String client, String operation) {
+        return timer(CLIENT_REQUEST, Tags.of("client", client, "operation", operation));
+    }
+
+    /**
+     * Таймер шага саги
+     * 
+     * @param saga  имя саги
+     * @param step  имя шага
+     * @param phase workload или compensation
+     */
+    public <T> Function<Uni<T>, Uni<T>> sagaStepTimer(String saga, String step, String phase) {
+        return timer(SAGA_STEP, Tags.of("saga", saga, "step", step, "phase", phase));
+    }
+
+    /**
+     * Начало ожидания соединения из пула
+     */
+    public Timer.Sample startPoolAcquisition() {
+        return Timer.start(registry);
+    }
+
+    /**
+     * Завершение ожидания соединения из пула
+     */
+    public void stopPoolAcquisition(Timer.Sample sample) {
+        sample.stop(registry.timer(DB_POOL_ACQUIRE));
+    }
+
+    public <T> Function<Uni<T>, Uni<T>> timer(String name, Tags tags) {
+        return uni -> Uni.createFrom().deferred(() -> {
+            final var sample = Timer.start(registry);
+            return uni.onTermination().invoke((item, failure, cancelled) -> {
+                final String outcome;
+                if (cancelled) {
+                    outcome = OUTCOME_CANCELLED;
+                } else if (failure != null) {
+                    outcome = OUTCOME_FAILURE;
+                } else {
+                    outcome = OUTCOME_SUCCESS;
+                }
+                sample.stop(registry.timer(name, tags.and("outcome", outcome)));
+            });
+        });
+    }
+}
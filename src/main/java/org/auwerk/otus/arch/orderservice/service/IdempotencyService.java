@@ -0,0 +1,30 @@
+package org.auwerk.otus.arch.orderservice.service;
+
+import java.util.function.Supplier;
+
+import org.auwerk.otus.arch.orderservice.domain.IdempotentResponse;
+
+import io.smallrye.mutiny.Uni;
+
+/**
+ * Выполнение запросов с ключом идемпотентности: запрос с ключом выполняется
+ * один раз, повторы получают сохраненный ответ. Ключи действуют в пределах
+ * пользователя.
+ */
+public interface IdempotencyService {
+
+    /**
+     * Выполнение запроса с ключом идемпотентности. Повтор запроса, пока
+     * исходный запрос выполняется на этом же экземпляре сервиса, получает его
+     * ответ; ответы с кодом 5xx не сохраняются, такой запрос можно повторить.
+     * Запрос выполняется до конца и его ответ сохраняется, даже если клиент
+     * отключился, не дождавшись ответа.
+     * 
+     * @param key         ключ идемпотентности
+     * @param fingerprint описание запроса; запрос с тем же ключом, но другим
+     *                    описанием отклоняется
+     * @param request     выполнение запроса
+     * @return ответ на запрос
+     */
+    Uni<IdempotentResponse> execute(String key, String fingerprint, Supplier<Uni<IdempotentResponse>> request);
+}
@@ -1,7 +1,10 @@
 package org.auwerk.otus.arch.orderservice.service;
 
+import java.util.List;
 import java.util.UUID;
 
+import org.auwerk.otus.arch.orderservice.client.dto.license.CreateLicenseRequestDto;
+
 import io.smallrye.mutiny.Uni;
 
 public interface LicenseService {
@@ -9,4 +12,19 @@ public interface LicenseService {
     Uni<UUID> createLicense(String productCode);
 
     Uni<Void> deleteLicense(UUID licenseId);
+
+    /**
+     * Выпуск нескольких лицензий одним запросом
+     * 
+     * @param requests запросы на выпуск лицензий
+     * @return идентификаторы лицензий в порядке запросов
+     */
+    Uni<List<UUID>> createLicenses(List<CreateLicenseRequestDto> requests);
+
+    /**
+     * Удаление нескольких лицензий одним запросом
+     * 
+     * @param licenseIds идентификаторы лицензий
+     */
+    Uni<Void> deleteLicenses(List<UUID> licenseIds);
 }
@@ -1,18 +1,53 @@
 package org.auwerk.otus.arch.orderservice.service;
 
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import org.auwerk.otus.arch.orderservice.domain.Order;
+import org.auwerk.otus.arch.orderservice.domain.OrderCursor;
+import org.auwerk.otus.arch.orderservice.domain.OrderDetail;
+import org.auwerk.otus.arch.orderservice.domain.OrderPosition;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatusEvent;
 
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 
 public interface OrderService {
 
-    Uni<List<Order>> getAllOrders(int pageSize, int page);
+    /**
+     * Получение страницы заказов пользователя
+     * 
+     * @param pageSize размер страницы
+     * @param page     номер страницы
+     * @param details  загружаемые детали заказов; незагруженные поля остаются
+     *                 пустыми
+     * @return заказы, отсортированные по убыванию даты создания
+     */
+    Uni<List<Order>> getAllOrders(int pageSize, int page, Set<OrderDetail> details);
+
+    /**
+     * Получение страницы заказов пользователя, следующих за курсором
+     * 
+     * @param pageSize размер страницы
+     * @param after    курсор последнего заказа предыдущей страницы
+     * @param details  загружаемые детали заказов; незагруженные поля остаются
+     *                 пустыми
+     * @return заказы, отсортированные по убыванию даты создания
+     */
+    Uni<List<Order>> getAllOrdersAfter(int pageSize, OrderCursor after, Set<OrderDetail> details);
 
     Uni<Order> getOrderById(UUID id);
 
+    /**
+     * Подписка на смены статуса заказа; первым событием передается текущий
+     * статус, поток завершается после перехода заказа в конечный статус
+     * 
+     * @param orderId идентификатор заказа
+     * @return события смены статуса заказа
+     */
+    Multi<OrderStatusEvent> getOrderEvents(UUID orderId);
+
     /**
      * Создание нового заказа
      * 
@@ -21,12 +56,24 @@ public interface OrderService {
     Uni<UUID> createOrder();
 
     /**
-     * Добавление позиции в заказ
+     * Добавление позиции в заказ; если продукт уже есть в заказе, увеличивается
+     * количество существующей позиции
      * 
-     * @return идентификатор добавленной позиции
+     * @return идентификатор добавленной или увеличенной позиции
      */
     Uni<UUID> addOrderPosition(UUID orderId, String productCode, Integer quantity);
 
+    /**
+     * Добавление нескольких позиций в заказ: заказ проверяется один раз, цены
+     * всех продуктов запрашиваются вместе, позиции добавляются одним запросом
+     * 
+     * @param orderId   идентификатор заказа
+     * @param positions добавляемые позиции (код продукта и количество)
+     * @return идентификаторы добавленных или увеличенных позиций в порядке
+     *         их передачи
+     */
+    Uni<List<UUID>> addOrderPositions(UUID orderId, List<OrderPosition> positions);
+
     /**
      * Удаление позиции из заказа
      * 
@@ -0,0 +1,24 @@
+package org.auwerk.otus.arch.orderservice.service;
+
+import java.util.List;
+
+import org.auwerk.otus.arch.orderservice.domain.OrderStatusEvent;
+
+import io.smallrye.mutiny.Uni;
+
+/**
+ * Получатель событий смены статуса заказа, публикуемых из outbox. Реализация
+ * выбирается параметром otus.outbox.sink.
+ */
+public interface OrderStatusEventSink {
+
+    /**
+     * Публикация пачки событий в порядке их записи; следующая пачка передается
+     * только после завершения публикации предыдущей. Доставка выполняется
+     * как минимум один раз, повторно доставленное событие имеет тот же
+     * порядковый номер.
+     * 
+     * @param events события
+     */
+    Uni<Void> publish(List<OrderStatusEvent> events);
+}
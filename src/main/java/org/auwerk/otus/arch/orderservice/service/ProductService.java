@@ -1,10 +1,30 @@
 package org.auwerk.otus.arch.orderservice.service;
 
 import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Set;
+
+import org.auwerk.otus.arch.orderservice.domain.PricingFlow;
 
 import io.smallrye.mutiny.Uni;
 
 public interface ProductService {
 
-    Uni<BigDecimal> getProductPrice(String productCode);
+    /**
+     * Получение цены продукта
+     * 
+     * @param productCode код продукта
+     * @param flow        сценарий, для которого запрашивается цена
+     * @return цена продукта
+     */
+    Uni<BigDecimal> getProductPrice(String productCode, PricingFlow flow);
+
+    /**
+     * Получение цен нескольких продуктов
+     * 
+     * @param productCodes коды продуктов
+     * @param flow         сценарий, для которого запрашиваются цены
+     * @return цены продуктов по их кодам
+     */
+    Uni<Map<String, BigDecimal>> getProductPrices(Set<String> productCodes, PricingFlow flow);
 }
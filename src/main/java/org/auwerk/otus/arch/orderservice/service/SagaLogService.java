@@ -0,0 +1,45 @@
+package org.auwerk.otus.arch.orderservice.service;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.auwerk.otus.arch.orderservice.domain.SagaStatus;
+import org.auwerk.otus.arch.orderservice.domain.SagaStepEvent;
+
+import io.smallrye.mutiny.Uni;
+
+/**
+ * Журнал выполнения саг в БД, по которому после сбоя незавершенные саги
+ * доводятся до конца или компенсируются. Записи журнала выполняются вне
+ * транзакции вызывающего кода.
+ */
+public interface SagaLogService {
+
+    /**
+     * Регистрация начала саги
+     * 
+     * @param sagaId  идентификатор выполнения саги
+     * @param saga    имя саги
+     * @param orderId идентификатор заказа
+     */
+    Uni<Void> start(UUID sagaId, String saga, UUID orderId);
+
+    /**
+     * Запись события шага саги; завершается после того, как запись сохранена в
+     * БД
+     * 
+     * @param sagaId      идентификатор выполнения саги
+     * @param step        имя шага
+     * @param event       событие шага
+     * @param resourceIds идентификаторы ресурсов, созданных шагом
+     */
+    Uni<Void> logStep(UUID sagaId, String step, SagaStepEvent event, List<UUID> resourceIds);
+
+    /**
+     * Регистрация завершения саги
+     * 
+     * @param sagaId идентификатор выполнения саги
+     * @param status итоговый статус саги
+     */
+    Uni<Void> finish(UUID sagaId, SagaStatus status);
+}
@@ -1,35 +1,83 @@
 package org.auwerk.otus.arch.orderservice.service.impl;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.UUID;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
 import org.auwerk.otus.arch.orderservice.client.BillingServiceOperationClient;
+import org.auwerk.otus.arch.orderservice.client.ClientGuard;
 import org.auwerk.otus.arch.orderservice.client.dto.billing.ExecuteOperationRequestDto;
 import org.auwerk.otus.arch.orderservice.client.dto.billing.OperationType;
+import org.auwerk.otus.arch.orderservice.client.exception.billing.InsufficentFundsException;
+import org.auwerk.otus.arch.orderservice.client.exception.billing.OperationNotFoundException;
+import org.auwerk.otus.arch.orderservice.metrics.MetricsRecorder;
 import org.auwerk.otus.arch.orderservice.service.BillingService;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.rest.client.inject.RestClient;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import io.smallrye.mutiny.Uni;
 
 @ApplicationScoped
 public class BillingServiceImpl implements BillingService {
 
+    private static final String CLIENT_NAME = "billing-service";
+
     @Inject
     @RestClient
     BillingServiceOperationClient billingServiceOperationClient;
 
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @Inject
+    MetricsRecorder metrics;
+
+    @ConfigProperty(name = "otus.billing-service.timeout", defaultValue = "PT5S")
+    Duration timeout;
+
+    @ConfigProperty(name = "otus.billing-service.max-in-flight", defaultValue = "64")
+    int maxInFlight;
+
+    @ConfigProperty(name = "otus.billing-service.circuit-breaker.failure-threshold", defaultValue = "5")
+    int circuitFailureThreshold;
+
+    @ConfigProperty(name = "otus.billing-service.circuit-breaker.open-duration", defaultValue = "PT10S")
+    Duration circuitOpenDuration;
+
+    ClientGuard clientGuard;
+
+    @PostConstruct
+    void initClientGuard() {
+        clientGuard = ClientGuard.builder()
+                .client(CLIENT_NAME)
+                .timeout(timeout)
+                .maxInFlight(maxInFlight)
+                .failureThreshold(circuitFailureThreshold)
+                .openDuration(circuitOpenDuration)
+                .ignoredFailure(InsufficentFundsException.class)
+                .ignoredFailure(OperationNotFoundException.class)
+                .registry(meterRegistry)
+                .build();
+    }
+
     @Override
     public Uni<UUID> withdrawFunds(BigDecimal amount, String comment) {
         return billingServiceOperationClient
                 .executeOperation(new ExecuteOperationRequestDto(OperationType.WITHDRAW, amount, comment))
-                .map(response -> response.getOperationId());
+                .map(response -> response.getOperationId())
+                .plug(metrics.clientTimer(CLIENT_NAME, "executeOperation"))
+                .plug(clientGuard.guard());
     }
 
     @Override
     public Uni<Void> cancelOperation(UUID operationId) {
-        return billingServiceOperationClient.cancelOperation(operationId);
+        return billingServiceOperationClient.cancelOperation(operationId)
+                .plug(metrics.clientTimer(CLIENT_NAME, "cancelOperation"))
+                .plug(clientGuard.guard());
     }
 }
@@ -0,0 +1,63 @@
+package org.auwerk.otus.arch.orderservice.service.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.auwerk.otus.arch.orderservice.domain.OrderStatusEvent;
+import org.auwerk.otus.arch.orderservice.service.OrderStatusEventSink;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.quarkus.arc.lookup.LookupIfProperty;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+
+/**
+ * Запись опубликованных событий в файл для локального запуска, по одному
+ * событию в формате JSON на строку
+ */
+@ApplicationScoped
+@LookupIfProperty(name = "otus.outbox.sink", stringValue = "file")
+public class FileOrderStatusEventSink implements OrderStatusEventSink {
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @ConfigProperty(name = "otus.outbox.file.path", defaultValue = "order-status-events.jsonl")
+    Path path;
+
+    @Override
+    public Uni<Void> publish(List<OrderStatusEvent> events) {
+        return Uni.createFrom().<Void>item(() -> {
+            final var lines = new StringBuilder();
+            for (final var event : events) {
+                lines.append(toJson(event)).append('\n');
+            }
+            try {
+                Files.writeString(path, lines, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return null;
+        }).runSubscriptionOn(Infrastructure.getDefaultWorkerPool());
+    }
+
+    private String toJson(OrderStatusEvent event) {
+        try {
+            return objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("event serialization failed, id=" + event.getId(), ex);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.auwerk.otus.arch.orderservice.service.impl;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.auwerk.otus.arch.orderservice.dao.IdempotencyKeyDao;
+import org.auwerk.otus.arch.orderservice.domain.IdempotencyRecord;
+import org.auwerk.otus.arch.orderservice.domain.IdempotentResponse;
+import org.auwerk.otus.arch.orderservice.exception.IdempotencyKeyInProgressException;
+import org.auwerk.otus.arch.orderservice.exception.IdempotencyKeyMismatchException;
+import org.auwerk.otus.arch.orderservice.service.IdempotencyService;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.quarkus.security.identity.SecurityIdentity;
+import io.smallrye.mutiny.Uni;
+import io.vertx.mutiny.pgclient.PgPool;
+
+/**
+ * Ключи идемпотентности хранятся в БД, недавно использованные ключи также
+ * кэшируются в памяти. Ключ захватывается в БД до выполнения запроса, поэтому
+ * повтор, пришедший на другой экземпляр сервиса во время выполнения,
+ * отклоняется, а не выполняется второй раз.
+ */
+@ApplicationScoped
+public class IdempotencyServiceImpl implements IdempotencyService {
+
+    protected static final String CACHE_NAME = "idempotency-keys";
+
+    @Inject
+    PgPool pool;
+
+    @Inject
+    IdempotencyKeyDao idempotencyKeyDao;
+
+    @Inject
+    SecurityIdentity securityIdentity;
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @ConfigProperty(name = "otus.idempotency.ttl", defaultValue = "PT24H")
+    Duration ttl;
+
+    @ConfigProperty(name = "otus.idempotency.lock-timeout", defaultValue = "PT1M")
+    Duration lockTimeout;
+
+    @ConfigProperty(name = "otus.idempotency.cache.max-size", defaultValue = "10000")
+    long cacheMaxSize;
+
+    AsyncCache<CacheKey, IdempotencyRecord> cache;
+
+    @PostConstruct
+    void initCache() {
+        cache = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(cacheMaxSize)
+                .executor(Runnable::run)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), CACHE_NAME);
+    }
+
+    @Override
+    public Uni<IdempotentResponse> execute(String key, String fingerprint,
+            Supplier<Uni<IdempotentResponse>> request) {
+        final var cacheKey = new CacheKey(securityIdentity.getPrincipal().getName(), key);
+        // Concurrent duplicates share a single execution, failed executions are not cached. Each caller
+        // waits on its own copy, so a disconnected caller never cancels the execution its duplicates share.
+        return Uni.createFrom().completionStage(() -> cache.get(cacheKey,
+                (k, executor) -> claimOrReplay(k, fingerprint, request).subscribeAsCompletionStage()).copy())
+                .invoke(record -> {
+                    if (!record.getFingerprint().equals(fingerprint)) {
+                        throw new IdempotencyKeyMismatchException(key);
+                    }
+                    if (!isStorable(record.getResponse())) {
+                        cache.synchronous().invalidate(cacheKey);
+                    }
+                })
+                .map(IdempotencyRecord::getResponse);
+    }
+
+    private Uni<IdempotencyRecord> claimOrReplay(CacheKey cacheKey, String fingerprint,
+            Supplier<Uni<IdempotentResponse>> request) {
+        final var now = LocalDateTime.now();
+        final var record = IdempotencyRecord.builder()
+                .userName(cacheKey.userName())
+                .key(cacheKey.key())
+                .fingerprint(fingerprint)
+                .createdAt(now)
+                .build();
+        return idempotencyKeyDao.tryClaim(pool, record, now.minus(lockTimeout), now.minus(ttl))
+                .flatMap(claimed -> {
+                    if (claimed) {
+                        return executeClaimed(record, request);
+                    }
+                    return idempotencyKeyDao.findByKey(pool, record.getUserName(), record.getKey())
+                            .map(existing -> existing
+                                    .filter(r -> r.getResponse() != null)
+                                    .orElseThrow(() -> new IdempotencyKeyInProgressException(record.getKey())));
+                });
+    }
+
+    private Uni<IdempotencyRecord> executeClaimed(IdempotencyRecord record,
+            Supplier<Uni<IdempotentResponse>> request) {
+        return Uni.createFrom().deferred(request::get)
+                .onFailure().call(() -> release(record))
+                .call(response -> isStorable(response)
+                        ? idempotencyKeyDao.complete(pool, record.getUserName(), record.getKey(), response)
+                                // The request has been executed, its response is still returned; the key
+                                // stays claimed until the lock timeout
+                                .onFailure().recoverWithNull()
+                        : release(record))
+                .map(response -> {
+                    record.setResponse(response);
+                    return record;
+                });
+    }
+
+    /**
+     * Освобождение ключа после неуспешного запроса; если освободить ключ не
+     * удалось, он освобождается по истечении lock-timeout
+     */
+    private Uni<Void> release(IdempotencyRecord record) {
+        return idempotencyKeyDao.deleteByKey(pool, record.getUserName(), record.getKey())
+                .onFailure().recoverWithNull();
+    }
+
+    private static boolean isStorable(IdempotentResponse response) {
+        return response.getStatusCode() < 500;
+    }
+
+    record CacheKey(String userName, String key) {
+    }
+}
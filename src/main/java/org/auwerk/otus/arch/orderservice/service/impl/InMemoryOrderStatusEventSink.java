@@ -0,0 +1,52 @@
+package org.auwerk.otus.arch.orderservice.service.impl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import org.auwerk.otus.arch.orderservice.domain.OrderStatusEvent;
+import org.auwerk.otus.arch.orderservice.service.OrderStatusEventSink;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.quarkus.arc.lookup.LookupIfProperty;
+import io.smallrye.mutiny.Uni;
+
+/**
+ * Хранение опубликованных событий в памяти для локального запуска; при
+ * переполнении вытесняются самые старые события
+ */
+@ApplicationScoped
+@LookupIfProperty(name = "otus.outbox.sink", stringValue = "memory", lookupIfMissing = true)
+public class InMemoryOrderStatusEventSink implements OrderStatusEventSink {
+
+    @ConfigProperty(name = "otus.outbox.memory.capacity", defaultValue = "1000")
+    int capacity;
+
+    private final Deque<OrderStatusEvent> events = new ArrayDeque<>();
+
+    @Override
+    public Uni<Void> publish(List<OrderStatusEvent> events) {
+        return Uni.createFrom().item(() -> {
+            synchronized (this.events) {
+                for (final var event : events) {
+                    if (this.events.size() >= capacity) {
+                        this.events.removeFirst();
+                    }
+                    this.events.addLast(event);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Опубликованные события в порядке публикации
+     */
+    public List<OrderStatusEvent> getEvents() {
+        synchronized (events) {
+            return List.copyOf(events);
+        }
+    }
+}
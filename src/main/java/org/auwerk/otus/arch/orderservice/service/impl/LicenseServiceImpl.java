@@ -1,33 +1,108 @@
 package org.auwerk.otus.arch.orderservice.service.impl;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.UUID;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
+import org.auwerk.otus.arch.orderservice.client.ClientGuard;
 import org.auwerk.otus.arch.orderservice.client.LicenseServiceClient;
 import org.auwerk.otus.arch.orderservice.client.dto.license.CreateLicenseRequestDto;
+import org.auwerk.otus.arch.orderservice.client.dto.license.CreateLicenseResponseDto;
+import org.auwerk.otus.arch.orderservice.metrics.MetricsRecorder;
 import org.auwerk.otus.arch.orderservice.service.LicenseService;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.rest.client.inject.RestClient;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import io.smallrye.mutiny.Uni;
 
 @ApplicationScoped
 public class LicenseServiceImpl implements LicenseService {
 
+    private static final String CLIENT_NAME = "license-service";
+
     @Inject
     @RestClient
     LicenseServiceClient licenseServiceClient;
 
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @Inject
+    MetricsRecorder metrics;
+
+    @ConfigProperty(name = "otus.license-service.timeout", defaultValue = "PT5S")
+    Duration timeout;
+
+    @ConfigProperty(name = "otus.license-service.max-in-flight", defaultValue = "64")
+    int maxInFlight;
+
+    @ConfigProperty(name = "otus.license-service.circuit-breaker.failure-threshold", defaultValue = "5")
+    int circuitFailureThreshold;
+
+    @ConfigProperty(name = "otus.license-service.circuit-breaker.open-duration", defaultValue = "PT10S")
+    Duration circuitOpenDuration;
+
+    ClientGuard clientGuard;
+
+    @PostConstruct
+    void initClientGuard() {
+        clientGuard = ClientGuard.builder()
+                .client(CLIENT_NAME)
+                .timeout(timeout)
+                .maxInFlight(maxInFlight)
+                .failureThreshold(circuitFailureThreshold)
+                .openDuration(circuitOpenDuration)
+                .registry(meterRegistry)
+                .build();
+    }
+
     @Override
     public Uni<UUID> createLicense(String productCode) {
         return licenseServiceClient
                 .createLicense(new CreateLicenseRequestDto(UUID.randomUUID(), productCode))
-                .map(response -> response.getLicenseId());
+                .map(response -> response.getLicenseId())
+                .plug(metrics.clientTimer(CLIENT_NAME, "createLicense"))
+                .plug(clientGuard.guard());
     }
 
     @Override
     public Uni<Void> deleteLicense(UUID licenseId) {
-        return licenseServiceClient.deleteLicense(licenseId);
+        return licenseServiceClient.deleteLicense(licenseId)
+                .plug(metrics.clientTimer(CLIENT_NAME, "deleteLicense"))
+                .plug(clientGuard.guard());
+    }
+
+    @Override
+    public Uni<List<UUID>> createLicenses(List<CreateLicenseRequestDto> requests) {
+        if (requests.isEmpty()) {
+            return Uni.createFrom().item(List.of());
+        }
+        return licenseServiceClient.createLicenses(requests)
+                .map(responses -> {
+                    if (responses.size() != requests.size()) {
+                        throw new IllegalStateException("license batch size mismatch, requested=" + requests.size()
+                                + ", created=" + responses.size());
+                    }
+                    return responses.stream()
+                            .map(CreateLicenseResponseDto::getLicenseId)
+                            .toList();
+                })
+                .plug(metrics.clientTimer(CLIENT_NAME, "createLicenses"))
+                .plug(clientGuard.guard());
+    }
+
+    @Override
+    public Uni<Void> deleteLicenses(List<UUID> licenseIds) {
+        if (licenseIds.isEmpty()) {
+            return Uni.createFrom().voidItem();
+        }
+        return licenseServiceClient.deleteLicenses(licenseIds)
+                .plug(metrics.clientTimer(CLIENT_NAME, "deleteLicenses"))
+                .plug(clientGuard.guard());
     }
 }
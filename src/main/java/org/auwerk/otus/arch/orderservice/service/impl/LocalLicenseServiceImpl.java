@@ -0,0 +1,76 @@
+package org.auwerk.otus.arch.orderservice.service.impl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.Priority;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Alternative;
+
+import org.auwerk.otus.arch.orderservice.client.dto.license.CreateLicenseRequestDto;
+import org.auwerk.otus.arch.orderservice.service.LicenseService;
+
+import io.quarkus.arc.profile.IfBuildProfile;
+import io.smallrye.mutiny.Uni;
+
+/**
+ * Локальная замена сервиса лицензий для тестов: лицензии хранятся в памяти,
+ * повторный запрос с тем же queryId возвращает ранее выпущенную лицензию
+ */
+@Alternative
+@Priority(1)
+@IfBuildProfile("test")
+@ApplicationScoped
+public class LocalLicenseServiceImpl implements LicenseService {
+
+    private final Map<UUID, String> licenses = new ConcurrentHashMap<>();
+    private final Map<UUID, UUID> licenseIdsByQueryId = new ConcurrentHashMap<>();
+
+    @Override
+    public Uni<UUID> createLicense(String productCode) {
+        return Uni.createFrom().item(() -> issueLicense(new CreateLicenseRequestDto(UUID.randomUUID(), productCode)));
+    }
+
+    @Override
+    public Uni<Void> deleteLicense(UUID licenseId) {
+        return Uni.createFrom().item(() -> {
+            if (licenses.remove(licenseId) == null) {
+                throw new NoSuchElementException("license not found, id=" + licenseId);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public Uni<List<UUID>> createLicenses(List<CreateLicenseRequestDto> requests) {
+        return Uni.createFrom().item(() -> requests.stream()
+                .map(this::issueLicense)
+                .toList());
+    }
+
+    @Override
+    public Uni<Void> deleteLicenses(List<UUID> licenseIds) {
+        return Uni.createFrom().item(() -> {
+            licenseIds.forEach(licenses::remove);
+            return null;
+        });
+    }
+
+    /**
+     * Выпущенные лицензии: код продукта по идентификатору лицензии
+     */
+    public Map<UUID, String> getLicenses() {
+        return Map.copyOf(licenses);
+    }
+
+    private UUID issueLicense(CreateLicenseRequestDto request) {
+        return licenseIdsByQueryId.computeIfAbsent(request.getQueryId(), queryId -> {
+            final var licenseId = UUID.randomUUID();
+            licenses.put(licenseId, request.getProductCode());
+            return licenseId;
+        });
+    }
+}
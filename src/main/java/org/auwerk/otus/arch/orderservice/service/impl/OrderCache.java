@@ -0,0 +1,79 @@
+package org.auwerk.otus.arch.orderservice.service.impl;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.function.Function;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.auwerk.otus.arch.orderservice.domain.Order;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.smallrye.mutiny.Uni;
+
+/**
+ * Кэш агрегатов заказа (заказ вместе с позициями и историей статусов).
+ * Закэшированные агрегаты используются только для чтения. Смена статуса,
+ * зафиксированная любым экземпляром сервиса, удаляет агрегат из кэша через
+ * {@link OrderStatusEventBus}; изменения позиций, внесенные другими
+ * экземплярами, и смены статуса, пропущенные при переподключении к LISTEN,
+ * видны не позднее чем через ttl.
+ */
+@ApplicationScoped
+public class OrderCache {
+
+    protected static final String CACHE_NAME = "orders";
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @ConfigProperty(name = "otus.order-cache.ttl", defaultValue = "PT10S")
+    Duration ttl;
+
+    @ConfigProperty(name = "otus.order-cache.max-size", defaultValue = "10000")
+    long maxSize;
+
+    AsyncCache<UUID, Order> cache;
+
+    @PostConstruct
+    void initCache() {
+        cache = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxSize)
+                .executor(Runnable::run)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), CACHE_NAME);
+    }
+
+    /**
+     * Получение агрегата заказа из кэша с загрузкой при отсутствии
+     *
+     * @param id     идентификатор заказа
+     * @param loader загрузка агрегата заказа из БД
+     * @return агрегат заказа
+     */
+    public Uni<Order> get(UUID id, Function<UUID, Uni<Order>> loader) {
+        // Concurrent misses share a single load, failed loads are not cached. Each caller
+        // waits on its own copy, so a cancelled caller never cancels the shared load.
+        return Uni.createFrom().completionStage(() -> cache.get(id,
+                (orderId, executor) -> loader.apply(orderId).subscribeAsCompletionStage()).copy());
+    }
+
+    /**
+     * Удаление агрегата заказа из кэша; вызывается после фиксации изменений
+     * заказа, поэтому загрузка, начатая до фиксации, также отбрасывается
+     *
+     * @param id идентификатор заказа
+     */
+    public void invalidate(UUID id) {
+        cache.synchronous().invalidate(id);
+    }
+}
@@ -2,99 +2,139 @@ package org.auwerk.otus.arch.orderservice.service.impl;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.WebApplicationException;
 
 import org.auwerk.arch.reactivesaga.Saga;
 import org.auwerk.arch.reactivesaga.exception.SagaException;
 import org.auwerk.arch.reactivesaga.log.InMemoryExecutionLog;
+import org.auwerk.otus.arch.orderservice.client.dto.license.CreateLicenseRequestDto;
+import org.auwerk.otus.arch.orderservice.client.exception.billing.InsufficentFundsException;
+import org.auwerk.otus.arch.orderservice.client.exception.billing.OperationNotFoundException;
 import org.auwerk.otus.arch.orderservice.dao.OrderDao;
 import org.auwerk.otus.arch.orderservice.dao.OrderPositionDao;
 import org.auwerk.otus.arch.orderservice.dao.OrderStatusChangeDao;
+import org.auwerk.otus.arch.orderservice.dao.OutboxDao;
 import org.auwerk.otus.arch.orderservice.domain.Order;
+import org.auwerk.otus.arch.orderservice.domain.OrderCursor;
+import org.auwerk.otus.arch.orderservice.domain.OrderDetail;
 import org.auwerk.otus.arch.orderservice.domain.OrderPosition;
 import org.auwerk.otus.arch.orderservice.domain.OrderStatus;
 import org.auwerk.otus.arch.orderservice.domain.OrderStatusChange;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatusEvent;
+import org.auwerk.otus.arch.orderservice.domain.PricingFlow;
+import org.auwerk.otus.arch.orderservice.domain.SagaStatus;
+import org.auwerk.otus.arch.orderservice.domain.SagaStepEvent;
+import org.auwerk.otus.arch.orderservice.exception.ClientUnavailableException;
+import org.auwerk.otus.arch.orderservice.exception.ClientUnavailableException.Reason;
 import org.auwerk.otus.arch.orderservice.exception.OrderAlreadyPlacedException;
 import org.auwerk.otus.arch.orderservice.exception.OrderCanNotBeCanceledException;
 import org.auwerk.otus.arch.orderservice.exception.OrderCanNotBeChangedException;
+import org.auwerk.otus.arch.orderservice.exception.OrderConcurrentlyModifiedException;
 import org.auwerk.otus.arch.orderservice.exception.OrderCreatedByDifferentUserException;
 import org.auwerk.otus.arch.orderservice.exception.OrderIsNotPlacedException;
 import org.auwerk.otus.arch.orderservice.exception.OrderNotFoundException;
 import org.auwerk.otus.arch.orderservice.exception.OrderPositionNotFoundException;
+import org.auwerk.otus.arch.orderservice.metrics.MetricsRecorder;
 import org.auwerk.otus.arch.orderservice.service.BillingService;
 import org.auwerk.otus.arch.orderservice.service.LicenseService;
 import org.auwerk.otus.arch.orderservice.service.OrderService;
 import org.auwerk.otus.arch.orderservice.service.ProductService;
+import org.auwerk.otus.arch.orderservice.service.SagaLogService;
 
 import io.quarkus.security.identity.SecurityIdentity;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.SqlClient;
+import io.vertx.mutiny.sqlclient.SqlConnection;
 import lombok.RequiredArgsConstructor;
 
 @ApplicationScoped
 @RequiredArgsConstructor
 public class OrderServiceImpl implements OrderService {
 
+    protected static final String PAY_ORDER_SAGA = "payOrder";
+    protected static final String WITHDRAW_FUNDS_STEP = "withdrawFunds";
+    protected static final String CREATE_LICENSES_STEP = "createLicenses";
+
+    private static final String SAGA_WORKLOAD = "workload";
+    private static final String SAGA_COMPENSATION = "compensation";
+    private static final String LICENSE_IDS = "licenseIds";
+
     private final PgPool pool;
     private final OrderDao orderDao;
     private final OrderPositionDao positionDao;
     private final OrderStatusChangeDao statusChangeDao;
+    private final OutboxDao outboxDao;
     private final SecurityIdentity securityIdentity;
     private final ProductService productService;
     private final LicenseService licenseService;
     private final BillingService billingService;
+    private final MetricsRecorder metrics;
+    private final OrderCache orderCache;
+    private final SagaLogService sagaLog;
+    private final OrderStatusEventBus orderEvents;
 
     @Override
-    public Uni<List<Order>> getAllOrders(int pageSize, int page) {
+    public Uni<List<Order>> getAllOrders(int pageSize, int page, Set<OrderDetail> details) {
         final var userName = securityIdentity.getPrincipal().getName();
-        return orderDao.findAllByUserName(pool, userName, pageSize, page).call(orders -> {
-            if (orders.isEmpty()) {
-                return Uni.createFrom().item(List.of());
-            } else {
-                final var orderUnis = orders.stream()
-                        .map(order -> Uni.combine().all().unis(
-                                positionDao.findAllByOrderId(pool, order.getId())
-                                        .invoke(positions -> order.setPositions(positions)),
-                                statusChangeDao.findAllByOrderId(pool, order.getId())
-                                        .invoke(statusChanges -> order.setStatusChanges(statusChanges)))
-                                .discardItems())
-                        .toList();
-                return Uni.combine().all().unis(orderUnis).discardItems();
-            }
-        });
+        return orderDao.findAllByUserName(pool, userName, pageSize, page)
+                .call(orders -> fetchOrderDetails(orders, details));
+    }
+
+    @Override
+    public Uni<List<Order>> getAllOrdersAfter(int pageSize, OrderCursor after, Set<OrderDetail> details) {
+        final var userName = securityIdentity.getPrincipal().getName();
+        return orderDao.findAllByUserNameAfter(pool, userName, after, pageSize)
+                .call(orders -> fetchOrderDetails(orders, details));
     }
 
     @Override
     public Uni<Order> getOrderById(UUID id) {
-        return orderDao.findById(pool, id)
-                .invoke(order -> {
-                    if (!securityIdentity.getPrincipal().getName().equals(order.getUserName())) {
-                        throw new OrderCreatedByDifferentUserException(order.getId());
-                    }
-                })
-                .call(order -> Uni.combine().all().unis(
-                        positionDao.findAllByOrderId(pool, order.getId())
-                                .invoke(positions -> order.setPositions(positions)),
-                        statusChangeDao.findAllByOrderId(pool, order.getId())
-                                .invoke(statusChanges -> order.setStatusChanges(statusChanges)))
-                        .discardItems())
+        return orderCache.get(id, this::loadOrder)
+                .invoke(order -> checkOrderOwner(order))
                 .onFailure(NoSuchElementException.class)
                 .transform(ex -> new OrderNotFoundException(id));
     }
 
+    @Override
+    public Multi<OrderStatusEvent> getOrderEvents(UUID orderId) {
+        // The current status is read past the cache: a stale terminal status would leave
+        // the stream waiting for a notification that has already been sent
+        return orderEvents.subscribe(orderId, orderDao.findById(pool, orderId)
+                .invoke(order -> checkOrderOwner(order))
+                .onFailure(NoSuchElementException.class)
+                .transform(ex -> new OrderNotFoundException(orderId))
+                .map(order -> OrderStatusEvent.builder()
+                        .orderId(order.getId())
+                        .status(order.getStatus())
+                        .createdAt(order.getUpdatedAt())
+                        .build()));
+    }
+
     @Override
     public Uni<UUID> createOrder() {
         final var id = UUID.randomUUID();
         final var createdAt = LocalDateTime.now();
         final var userName = securityIdentity.getPrincipal().getName();
 
-        return orderDao.insert(pool, id, userName, createdAt)
-                .chain(() -> insertOrderStatusChange(pool, id, OrderStatus.CREATED))
-                .replaceWith(id);
+        return inTransaction(conn -> orderDao.insert(conn, id, userName, createdAt)
+                .chain(() -> insertOrderStatusChange(conn, id, OrderStatus.CREATED))
+                .replaceWith(id));
     }
 
     @Override
@@ -105,36 +145,66 @@ public class OrderServiceImpl implements OrderService {
                 .quantity(quantity)
                 .build();
 
-        return pool.withTransaction(conn -> orderDao.findById(pool, orderId)
+        return inTransaction(conn -> orderDao.findById(conn, orderId)
                 .invoke(order -> {
                     if (!OrderStatus.CREATED.equals(order.getStatus())) {
                         throw new OrderCanNotBeChangedException(orderId);
                     }
                 })
-                .call(() -> productService.getProductPrice(productCode)
+                .call(() -> productService.getProductPrice(productCode, PricingFlow.ORDER_POSITION)
                         .invoke(price -> position.setPrice(price)))
-                .flatMap(order -> positionDao.insert(pool, position))
+                // Waits for concurrent changes of the order, fails if it has been placed or canceled meanwhile
+                .call(order -> touchOrder(conn, orderId))
+                .flatMap(order -> positionDao.upsert(conn, position))
+                .onFailure(NoSuchElementException.class)
+                .transform(ex -> new OrderNotFoundException(orderId)))
+                .invoke(() -> orderCache.invalidate(orderId));
+    }
+
+    @Override
+    public Uni<List<UUID>> addOrderPositions(UUID orderId, List<OrderPosition> positions) {
+        final var productCodes = positions.stream()
+                .map(OrderPosition::getProductCode)
+                .collect(Collectors.toSet());
+
+        return inTransaction(conn -> orderDao.findById(conn, orderId)
+                .invoke(order -> {
+                    if (!OrderStatus.CREATED.equals(order.getStatus())) {
+                        throw new OrderCanNotBeChangedException(orderId);
+                    }
+                })
+                .call(() -> productService.getProductPrices(productCodes, PricingFlow.ORDER_POSITION)
+                        .invoke(prices -> positions.forEach(position -> {
+                            position.setOrderId(orderId);
+                            position.setPrice(prices.get(position.getProductCode()));
+                        })))
+                .call(order -> touchOrder(conn, orderId))
+                .flatMap(order -> positionDao.upsertAll(conn, positions))
                 .onFailure(NoSuchElementException.class)
-                .transform(ex -> new OrderNotFoundException(orderId)));
+                .transform(ex -> new OrderNotFoundException(orderId)))
+                .invoke(() -> orderCache.invalidate(orderId));
     }
 
     @Override
     public Uni<Void> removeOrderPosition(UUID positionId) {
-        return positionDao.findById(pool, positionId)
-                .call(position -> orderDao.findById(pool, position.getOrderId())
+        return inTransaction(conn -> positionDao.findById(conn, positionId)
+                .call(position -> orderDao.findById(conn, position.getOrderId())
                         .invoke(order -> {
                             if (!OrderStatus.CREATED.equals(order.getStatus())) {
                                 throw new OrderCanNotBeChangedException(order.getId());
                             }
-                        }))
-                .flatMap(position -> positionDao.deleteById(pool, positionId))
+                        })
+                        .call(order -> touchOrder(conn, order.getId())))
+                .call(position -> positionDao.deleteById(conn, positionId))
                 .onFailure(NoSuchElementException.class)
-                .transform(ex -> new OrderPositionNotFoundException(positionId));
+                .transform(ex -> new OrderPositionNotFoundException(positionId)))
+                .invoke(position -> orderCache.invalidate(position.getOrderId()))
+                .replaceWithVoid();
     }
 
     @Override
     public Uni<Void> placeOrder(UUID orderId) {
-        return pool.withTransaction(conn -> orderDao.findById(pool, orderId)
+        return inTransaction(conn -> orderDao.findById(conn, orderId)
                 .invoke(order -> {
                     if (!order.getUserName().equals(securityIdentity.getPrincipal().getName())) {
                         throw new OrderCreatedByDifferentUserException(order.getId());
@@ -143,91 +213,244 @@ public class OrderServiceImpl implements OrderService {
                         throw new OrderAlreadyPlacedException(order.getId());
                     }
                 })
-                .call(order -> positionDao.findAllByOrderId(pool, order.getId())
+                .call(order -> positionDao.findAllByOrderId(conn, order.getId())
                         .invoke(positions -> order.setPositions(positions)))
                 .call(order -> {
-                    final var positionUnis = order.getPositions().stream()
-                            .map(position -> productService.getProductPrice(position.getProductCode())
-                                    .call(price -> positionDao.updatePriceById(pool, position.getId(), price)))
-                            .toList();
-                    if (positionUnis.isEmpty()) {
+                    if (order.getPositions().isEmpty()) {
                         return Uni.createFrom().voidItem();
                     }
-                    return Uni.combine().all().unis(positionUnis).discardItems();
+                    final var productCodes = order.getPositions().stream()
+                            .map(OrderPosition::getProductCode)
+                            .collect(Collectors.toSet());
+                    return productService.getProductPrices(productCodes, PricingFlow.ORDER_PLACEMENT)
+                            .flatMap(prices -> {
+                                final var pricesById = new HashMap<UUID, BigDecimal>();
+                                order.getPositions().forEach(position -> {
+                                    position.setPrice(prices.get(position.getProductCode()));
+                                    pricesById.put(position.getId(), position.getPrice());
+                                });
+                                return positionDao.updatePrices(conn, pricesById);
+                            });
                 })
-                .call(order -> Uni.combine().all().unis(
-                        insertOrderStatusChange(pool, order.getId(), OrderStatus.PLACED),
-                        orderDao.updateStatus(pool, order.getId(), OrderStatus.PLACED)).discardItems())
+                .call(order -> transitionOrderStatus(conn, order, OrderStatus.PLACED))
                 .replaceWithVoid()
                 .onFailure(NoSuchElementException.class)
-                .transform(ex -> new OrderNotFoundException(orderId)));
+                .transform(ex -> new OrderNotFoundException(orderId)))
+                .invoke(() -> orderCache.invalidate(orderId));
     }
 
     @Override
     public Uni<Void> payOrder(UUID orderId) {
-        return pool.withTransaction(conn -> orderDao.findById(pool, orderId)
-                .invoke(order -> {
-                    if (!order.getUserName().equals(securityIdentity.getPrincipal().getName())) {
-                        throw new OrderCreatedByDifferentUserException(order.getId());
-                    }
-                    if (!OrderStatus.PLACED.equals(order.getStatus())) {
-                        throw new OrderIsNotPlacedException(order.getId());
-                    }
-                })
-                .call(order -> positionDao.findAllByOrderId(pool, order.getId())
-                        .invoke(positions -> order.setPositions(positions)))
-                .call(order -> {
-                    if (order.getPositions().isEmpty()) {
-                        return Uni.createFrom().voidItem();
-                    }
-
-                    final var sagaExectionLog = new InMemoryExecutionLog();
-                    final var saga = new Saga(sagaExectionLog);
-
-                    saga.addStory(
-                            context -> {
-                                return billingService
-                                        .withdrawFunds(calculateTotal(order.getPositions()),
-                                                "payment for order ID=" + order.getId())
-                                        .invoke(operationId -> context.getValues().put("operationId", operationId))
-                                        .replaceWithVoid();
-                            },
-                            context -> billingService.cancelOperation(context.getValue("operationId")));
-                    order.getPositions().forEach(position -> saga.addStory(
-                            context -> licenseService.createLicense(position.getProductCode())
-                                    .invoke(licenseId -> context.getValues().put("licenseId", licenseId))
-                                    .replaceWithVoid(),
-                            context -> licenseService.deleteLicense(context.getValue("licenseId"))));
-
-                    return saga.execute()
-                            .onFailure(SagaException.class)
-                            .transform(ex -> sagaExectionLog.getAllFailures().get(0));
-                })
-                .call(order -> Uni.combine().all().unis(
-                        insertOrderStatusChange(pool, order.getId(), OrderStatus.COMPLETED),
-                        orderDao.updateStatus(pool, order.getId(), OrderStatus.COMPLETED)).discardItems())
+        final var sagaId = UUID.randomUUID();
+        return inTransaction(conn -> orderDao.findById(conn, orderId)
+                .invoke(order -> checkPayable(order))
+                // Claims the order before funds are withdrawn, so a concurrent payment of the
+                // same order is rejected instead of charging twice
+                .call(order -> updateOrderStatus(conn, order, order.getStatus()))
+                .call(order -> completePayment(conn, sagaId, order))
                 .onFailure(NoSuchElementException.class)
-                .transform(ex -> new OrderNotFoundException(orderId))
-                .replaceWithVoid());
+                .transform(ex -> new OrderNotFoundException(orderId)))
+                .call(order -> finishPaymentSaga(sagaId, order))
+                .invoke(() -> orderCache.invalidate(orderId))
+                .replaceWithVoid();
     }
 
     @Override
     public Uni<Void> cancelOrder(UUID orderId) {
-        return pool.withTransaction(conn -> orderDao.findById(pool, orderId)
-                .invoke(order -> {
-                    if (!order.getUserName().equals(securityIdentity.getPrincipal().getName())) {
-                        throw new OrderCreatedByDifferentUserException(order.getId());
-                    }
-                    if (!OrderStatus.CREATED.equals(order.getStatus())) {
-                        throw new OrderCanNotBeCanceledException(order.getId());
+        final var userName = securityIdentity.getPrincipal().getName();
+        return inTransaction(conn -> transitionOrderStatus(conn, orderId, userName, null,
+                Set.of(OrderStatus.CREATED), OrderStatus.CANCELED)
+                // The order is read only to explain why it has not been canceled
+                .call(canceled -> canceled
+                        ? Uni.createFrom().voidItem()
+                        : orderDao.findById(conn, orderId)
+                                .invoke(order -> {
+                                    if (!order.getUserName().equals(userName)) {
+                                        throw new OrderCreatedByDifferentUserException(order.getId());
+                                    }
+                                    if (!OrderStatus.CREATED.equals(order.getStatus())) {
+                                        throw new OrderCanNotBeCanceledException(order.getId());
+                                    }
+                                })
+                                .onItem().failWith(order -> new OrderConcurrentlyModifiedException(orderId)))
+                .replaceWithVoid()
+                .onFailure(NoSuchElementException.class)
+                .transform(ex -> new OrderNotFoundException(orderId)))
+                .invoke(() -> orderCache.invalidate(orderId));
+    }
+
+    private void checkOrderOwner(Order order) {
+        if (!securityIdentity.getPrincipal().getName().equals(order.getUserName())) {
+            throw new OrderCreatedByDifferentUserException(order.getId());
+        }
+    }
+
+    private void checkPayable(Order order) {
+        checkOrderOwner(order);
+        if (!OrderStatus.PLACED.equals(order.getStatus())) {
+            throw new OrderIsNotPlacedException(order.getId());
+        }
+    }
+
+    /**
+     * Оплата заказа в рамках транзакции: выполнение саги оплаты и перевод
+     * заказа в статус COMPLETED
+     */
+    private Uni<Void> completePayment(SqlConnection conn, UUID sagaId, Order order) {
+        return positionDao.findAllByOrderId(conn, order.getId())
+                .invoke(positions -> order.setPositions(positions))
+                .chain(() -> {
+                    if (order.getPositions().isEmpty()) {
+                        return Uni.createFrom().voidItem();
                     }
+                    return executePaymentSaga(sagaId, order);
                 })
+                .chain(() -> transitionOrderStatus(conn, order, OrderStatus.COMPLETED));
+    }
+
+    /**
+     * Отметка о завершении саги после фиксации статуса заказа; если эта запись
+     * потеряна, при восстановлении заказ будет найден оплаченным и сага
+     * отмечена завершенной
+     */
+    private Uni<Void> finishPaymentSaga(UUID sagaId, Order order) {
+        if (!OrderStatus.COMPLETED.equals(order.getStatus()) || order.getPositions().isEmpty()) {
+            return Uni.createFrom().voidItem();
+        }
+        return sagaLog.finish(sagaId, SagaStatus.COMPLETED)
+                .onFailure().recoverWithNull();
+    }
+
+    /**
+     * Выполнение саги оплаты заказа: списание средств и выпуск лицензий. Каждый
+     * шаг записывается в журнал саг до и после обращения к внешнему сервису,
+     * чтобы после сбоя сагу можно было завершить или компенсировать. Сага
+     * отмечается компенсированной, только если исход каждого начатого шага
+     * записан в журнал; иначе она остается незавершенной и разбирается при
+     * восстановлении.
+     */
+    private Uni<Void> executePaymentSaga(UUID sagaId, Order order) {
+        final var sagaExectionLog = new InMemoryExecutionLog();
+        final var saga = new Saga(sagaExectionLog);
+        final Set<String> unresolvedSteps = ConcurrentHashMap.newKeySet();
+
+        saga.addStory(
+                context -> executeSagaStep(sagaId, WITHDRAW_FUNDS_STEP, unresolvedSteps,
+                        () -> billingService
+                                .withdrawFunds(calculateTotal(order.getPositions()),
+                                        "payment for order ID=" + order.getId())
+                                .plug(metrics.sagaStepTimer(PAY_ORDER_SAGA, WITHDRAW_FUNDS_STEP, SAGA_WORKLOAD)),
+                        operationId -> List.of(operationId))
+                        .invoke(operationId -> context.getValues().put("operationId", operationId))
+                        .replaceWithVoid(),
+                context -> billingService.cancelOperation(context.getValue("operationId"))
+                        .plug(metrics.sagaStepTimer(PAY_ORDER_SAGA, WITHDRAW_FUNDS_STEP, SAGA_COMPENSATION))
+                        .call(() -> sagaLog.logStep(sagaId, WITHDRAW_FUNDS_STEP, SagaStepEvent.COMPENSATED,
+                                List.of())));
+        saga.addStory(
+                context -> {
+                    final var requests = order.getPositions().stream()
+                            .map(position -> new CreateLicenseRequestDto(UUID.randomUUID(),
+                                    position.getProductCode()))
+                            .toList();
+                    return executeSagaStep(sagaId, CREATE_LICENSES_STEP, unresolvedSteps,
+                            () -> licenseService.createLicenses(requests)
+                                    .plug(metrics.sagaStepTimer(PAY_ORDER_SAGA, CREATE_LICENSES_STEP,
+                                            SAGA_WORKLOAD)),
+                            Function.identity())
+                            .invoke(licenseIds -> context.getValues().put(LICENSE_IDS,
+                                    mapLicensesToPositions(order.getPositions(), licenseIds)))
+                            .replaceWithVoid();
+                },
+                context -> {
+                    final Map<UUID, UUID> licenseIds = context.getValue(LICENSE_IDS);
+                    if (licenseIds == null) {
+                        return Uni.createFrom().voidItem();
+                    }
+                    return licenseService.deleteLicenses(List.copyOf(licenseIds.values()))
+                            .plug(metrics.sagaStepTimer(PAY_ORDER_SAGA, CREATE_LICENSES_STEP, SAGA_COMPENSATION))
+                            .call(() -> sagaLog.logStep(sagaId, CREATE_LICENSES_STEP, SagaStepEvent.COMPENSATED,
+                                    List.of()));
+                });
+
+        return sagaLog.start(sagaId, PAY_ORDER_SAGA, order.getId())
+                .chain(saga::execute)
+                .onFailure(SagaException.class)
+                // Saga compensates only steps that succeeded; a step with no recorded outcome may have
+                // been applied by the service, so the saga is left running for recovery to find
+                .call(() -> unresolvedSteps.isEmpty()
+                        ? sagaLog.finish(sagaId, SagaStatus.COMPENSATED)
+                        : Uni.createFrom().voidItem())
+                .onFailure(SagaException.class)
+                .transform(ex -> sagaExectionLog.getAllFailures().get(0));
+    }
+
+    /**
+     * Выполнение шага саги с записью в журнал. Шаг остается в unresolvedSteps,
+     * пока его исход не записан: успех записывается как SUCCEEDED, отказ
+     * сервиса выполнить запрос - как FAILED; при неизвестном исходе (таймаут,
+     * сбой соединения, ответ 5xx) или сбое записи в журнал шаг остается
+     * нерешенным
+     */
+    private <T> Uni<T> executeSagaStep(UUID sagaId, String step, Set<String> unresolvedSteps,
+            Supplier<Uni<T>> call, Function<T, List<UUID>> resourceIds) {
+        return sagaLog.logStep(sagaId, step, SagaStepEvent.STARTED, List.of())
+                .invoke(() -> unresolvedSteps.add(step))
+                .chain(() -> call.get())
+                .onFailure(OrderServiceImpl::isRejectedByService)
+                .call(() -> sagaLog.logStep(sagaId, step, SagaStepEvent.FAILED, List.of())
+                        .invoke(() -> unresolvedSteps.remove(step)))
+                .call(result -> sagaLog.logStep(sagaId, step, SagaStepEvent.SUCCEEDED, resourceIds.apply(result)))
+                .invoke(() -> unresolvedSteps.remove(step));
+    }
+
+    /**
+     * Сервис отказался выполнить запрос: ответ 4xx или вызов отклонен без
+     * обращения к сервису; такой шаг саги точно не выполнен
+     */
+    protected static boolean isRejectedByService(Throwable failure) {
+        if (failure instanceof ClientUnavailableException ex) {
+            return !Reason.TIMEOUT.equals(ex.getReason());
+        }
+        if (failure instanceof WebApplicationException ex) {
+            return ex.getResponse().getStatus() < 500;
+        }
+        return failure instanceof InsufficentFundsException || failure instanceof OperationNotFoundException;
+    }
+
+    /**
+     * Выполнение работы в транзакции с учетом времени ожидания соединения из
+     * пула (включая открытие транзакции)
+     */
+    private <T> Uni<T> inTransaction(Function<SqlConnection, Uni<T>> work) {
+        return Uni.createFrom().deferred(() -> {
+            final var poolAcquisition = metrics.startPoolAcquisition();
+            return pool.withTransaction(conn -> {
+                metrics.stopPoolAcquisition(poolAcquisition);
+                return work.apply(conn);
+            });
+        });
+    }
+
+    private Uni<Order> loadOrder(UUID id) {
+        return orderDao.findById(pool, id)
                 .call(order -> Uni.combine().all().unis(
-                        insertOrderStatusChange(pool, order.getId(), OrderStatus.CANCELED),
-                        orderDao.updateStatus(pool, order.getId(), OrderStatus.CANCELED)).discardItems())
-                .replaceWithVoid()
-                .onFailure(NoSuchElementException.class)
-                .transform(ex -> new OrderNotFoundException(orderId)));
+                        positionDao.findAllByOrderId(pool, order.getId())
+                                .invoke(positions -> order.setPositions(positions)),
+                        statusChangeDao.findAllByOrderId(pool, order.getId())
+                                .invoke(statusChanges -> order.setStatusChanges(statusChanges)))
+                        .discardItems());
+    }
+
+    /**
+     * Сопоставление идентификаторов выпущенных лицензий позициям заказа
+     */
+    protected static Map<UUID, UUID> mapLicensesToPositions(List<OrderPosition> positions, List<UUID> licenseIds) {
+        final var result = new LinkedHashMap<UUID, UUID>(positions.size());
+        for (int i = 0; i < positions.size(); i++) {
+            result.put(positions.get(i).getId(), licenseIds.get(i));
+        }
+        return result;
     }
 
     protected static BigDecimal calculateTotal(List<OrderPosition> positions) {
@@ -239,12 +462,106 @@ public class OrderServiceImpl implements OrderService {
         return total;
     }
 
-    private Uni<Void> insertOrderStatusChange(PgPool pool, UUID orderId, OrderStatus targetStatus) {
+    private Uni<?> fetchOrderDetails(List<Order> orders, Set<OrderDetail> details) {
+        if (orders.isEmpty() || details.isEmpty()) {
+            return Uni.createFrom().item(List.of());
+        }
+        final var orderIds = orders.stream().map(Order::getId).toList();
+        return Uni.combine().all().unis(
+                details.contains(OrderDetail.POSITIONS)
+                        ? positionDao.findAllByOrderIds(pool, orderIds)
+                        : Uni.createFrom().<List<OrderPosition>>nullItem(),
+                details.contains(OrderDetail.STATUS_CHANGES)
+                        ? statusChangeDao.findAllByOrderIds(pool, orderIds)
+                        : Uni.createFrom().<List<OrderStatusChange>>nullItem())
+                .asTuple()
+                .invoke(tuple -> stitchOrders(orders, tuple.getItem1(), tuple.getItem2()));
+    }
+
+    /**
+     * Раскладывает позиции и историю статусов, загруженные одним запросом для
+     * всей страницы, по соответствующим заказам; незагруженные детали (null)
+     * пропускаются
+     */
+    protected static void stitchOrders(List<Order> orders, List<OrderPosition> positions,
+            List<OrderStatusChange> statusChanges) {
+        if (positions != null) {
+            final var positionsByOrderId = positions.stream()
+                    .collect(Collectors.groupingBy(OrderPosition::getOrderId));
+            for (final var order : orders) {
+                order.setPositions(positionsByOrderId.getOrDefault(order.getId(), new ArrayList<>()));
+            }
+        }
+        if (statusChanges != null) {
+            final var statusChangesByOrderId = statusChanges.stream()
+                    .collect(Collectors.groupingBy(OrderStatusChange::getOrderId));
+            for (final var order : orders) {
+                order.setStatusChanges(statusChangesByOrderId.getOrDefault(order.getId(), new ArrayList<>()));
+            }
+        }
+    }
+
+    /**
+     * Отметка изменения состава заказа; версия не проверяется, поэтому
+     * одновременные изменения позиций не конфликтуют между собой, а только с
+     * размещением или отменой заказа
+     */
+    private Uni<Void> touchOrder(SqlClient client, UUID orderId) {
+        return orderDao.touch(client, orderId, OrderStatus.CREATED)
+                .invoke(touched -> {
+                    if (!touched) {
+                        throw new OrderCanNotBeChangedException(orderId);
+                    }
+                })
+                .replaceWithVoid();
+    }
+
+    private Uni<Void> updateOrderStatus(SqlClient client, Order order, OrderStatus targetStatus) {
+        return orderDao.updateStatus(client, order.getId(), order.getVersion(), order.getStatus(), targetStatus)
+                .invoke(() -> {
+                    order.setStatus(targetStatus);
+                    order.setVersion(order.getVersion() + 1);
+                });
+    }
+
+    /**
+     * Перевод прочитанного заказа в статус; если заказ изменен после чтения,
+     * переход отклоняется с OrderConcurrentlyModifiedException
+     */
+    private Uni<Void> transitionOrderStatus(SqlClient client, Order order, OrderStatus targetStatus) {
+        return transitionOrderStatus(client, order.getId(), order.getUserName(), order.getVersion(),
+                Set.of(order.getStatus()), targetStatus)
+                .invoke(transitioned -> {
+                    if (!transitioned) {
+                        throw new OrderConcurrentlyModifiedException(order.getId());
+                    }
+                    order.setStatus(targetStatus);
+                    order.setVersion(order.getVersion() + 1);
+                })
+                .replaceWithVoid();
+    }
+
+    private Uni<Boolean> transitionOrderStatus(SqlClient client, UUID orderId, String userName, Long version,
+            Set<OrderStatus> expectedStatuses, OrderStatus targetStatus) {
+        final var statusChange = OrderStatusChange.builder()
+                .status(targetStatus)
+                .createdAt(LocalDateTime.now())
+                .build();
+
+        return orderDao.transitionStatus(client, orderId, userName, version, expectedStatuses, statusChange)
+                .call(transitioned -> transitioned
+                        ? outboxDao.insert(client, orderId, statusChange)
+                        : Uni.createFrom().voidItem());
+    }
+
+    private Uni<Void> insertOrderStatusChange(SqlClient client, UUID orderId, OrderStatus targetStatus) {
         final var statusChange = OrderStatusChange.builder()
                 .status(targetStatus)
                 .createdAt(LocalDateTime.now())
                 .build();
 
-        return statusChangeDao.insert(pool, orderId, statusChange);
+        // Event is published by the outbox relay only if the status change is committed
+        return statusChangeDao.insert(client, orderId, statusChange)
+                .call(() -> outboxDao.insert(client, orderId, statusChange));
     }
 }
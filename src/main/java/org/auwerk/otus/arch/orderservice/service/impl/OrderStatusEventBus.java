@@ -0,0 +1,157 @@
+package org.auwerk.otus.arch.orderservice.service.impl;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import org.auwerk.otus.arch.orderservice.dao.OutboxDao;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatus;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatusEvent;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.operators.multi.processors.UnicastProcessor;
+import io.vertx.mutiny.core.Vertx;
+import io.vertx.mutiny.pgclient.pubsub.PgSubscriber;
+import io.vertx.pgclient.PgConnectOptions;
+import lombok.extern.jbosslog.JBossLog;
+
+/**
+ * Рассылка событий смены статуса заказа подписчикам данного экземпляра
+ * сервиса. События поступают через LISTEN/NOTIFY, поэтому подписчики получают
+ * смены статуса, зафиксированные любым экземпляром. У каждого подписчика
+ * собственный ограниченный буфер; подписка, не успевающая забирать события,
+ * завершается с ошибкой. По каждому событию агрегат заказа удаляется из
+ * {@link OrderCache} данного экземпляра.
+ */
+@JBossLog
+@ApplicationScoped
+public class OrderStatusEventBus {
+
+    private static final Set<OrderStatus> TERMINAL_STATUSES = Set.of(OrderStatus.COMPLETED, OrderStatus.CANCELED);
+
+    @Inject
+    Vertx vertx;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    OrderCache orderCache;
+
+    @ConfigProperty(name = "otus.order-events.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "otus.order-events.buffer-size", defaultValue = "16")
+    int bufferSize;
+
+    @ConfigProperty(name = "quarkus.datasource.reactive.url")
+    String datasourceUrl;
+
+    @ConfigProperty(name = "quarkus.datasource.username")
+    String datasourceUsername;
+
+    @ConfigProperty(name = "quarkus.datasource.password")
+    String datasourcePassword;
+
+    private final Map<UUID, Set<UnicastProcessor<OrderStatusEvent>>> subscribers = new ConcurrentHashMap<>();
+
+    private PgSubscriber pgSubscriber;
+
+    void onStart(@Observes StartupEvent event) {
+        if (!enabled) {
+            return;
+        }
+        final var connectOptions = PgConnectOptions.fromUri(datasourceUrl)
+                .setUser(datasourceUsername)
+                .setPassword(datasourcePassword);
+        pgSubscriber = PgSubscriber.subscriber(vertx, connectOptions)
+                .reconnectPolicy(retries -> 1000L);
+        pgSubscriber.channel(OutboxDao.ORDER_STATUS_CHANNEL)
+                .handler(this::onNotification);
+        pgSubscriber.connect().subscribe().with(
+                connected -> log.info("order status events subscription started"),
+                failure -> log.error("order status events subscription failed", failure));
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        if (pgSubscriber != null) {
+            pgSubscriber.closeAndAwait();
+        }
+    }
+
+    /**
+     * Передача события подписчикам заказа; после перехода заказа в конечный
+     * статус подписки завершаются
+     *
+     * @param event событие смены статуса
+     */
+    public void publish(OrderStatusEvent event) {
+        // Status changes committed by other instances are not invalidated anywhere else
+        orderCache.invalidate(event.getOrderId());
+        final var orderSubscribers = subscribers.get(event.getOrderId());
+        if (orderSubscribers == null) {
+            return;
+        }
+        for (final var processor : orderSubscribers) {
+            processor.onNext(event);
+            if (isTerminal(event)) {
+                processor.onComplete();
+            }
+        }
+    }
+
+    /**
+     * Подписка на события заказа. Подписка регистрируется до получения
+     * текущего статуса, поэтому смена статуса, зафиксированная в это время, не
+     * теряется, но может быть передана повторно.
+     *
+     * @param orderId идентификатор заказа
+     * @param current получение текущего статуса заказа, передается первым
+     *                событием
+     * @return события смены статуса заказа
+     */
+    public Multi<OrderStatusEvent> subscribe(UUID orderId, Uni<OrderStatusEvent> current) {
+        return Multi.createFrom().deferred(() -> {
+            final var processor = UnicastProcessor.<OrderStatusEvent>create(
+                    new ArrayBlockingQueue<>(bufferSize), null);
+            subscribers.computeIfAbsent(orderId, id -> ConcurrentHashMap.newKeySet()).add(processor);
+            return current
+                    .onItem().transformToMulti(event -> isTerminal(event)
+                            ? Multi.createFrom().item(event)
+                            : Multi.createBy().concatenating().streams(Multi.createFrom().item(event), processor))
+                    .onTermination().invoke(() -> unsubscribe(orderId, processor));
+        });
+    }
+
+    private void unsubscribe(UUID orderId, UnicastProcessor<OrderStatusEvent> processor) {
+        subscribers.computeIfPresent(orderId, (id, orderSubscribers) -> {
+            orderSubscribers.remove(processor);
+            return orderSubscribers.isEmpty() ? null : orderSubscribers;
+        });
+    }
+
+    private void onNotification(String payload) {
+        try {
+            publish(objectMapper.readValue(payload, OrderStatusEvent.class));
+        } catch (JsonProcessingException ex) {
+            log.errorf(ex, "order status event parsing failed, payload=%s", payload);
+        }
+    }
+
+    private static boolean isTerminal(OrderStatusEvent event) {
+        return TERMINAL_STATUSES.contains(event.getStatus());
+    }
+}
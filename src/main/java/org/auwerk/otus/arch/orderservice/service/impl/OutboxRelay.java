@@ -0,0 +1,140 @@
+package org.auwerk.otus.arch.orderservice.service.impl;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+
+import org.auwerk.otus.arch.orderservice.dao.OutboxDao;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatusEvent;
+import org.auwerk.otus.arch.orderservice.service.OrderStatusEventSink;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.subscription.Cancellable;
+import io.vertx.mutiny.pgclient.PgPool;
+import lombok.extern.jbosslog.JBossLog;
+
+/**
+ * Публикация событий смены статуса заказа из outbox. Outbox периодически
+ * опрашивается, события передаются получателю пачками в порядке записи и
+ * удаляются из outbox в той же транзакции. Публикацию в каждый момент
+ * выполняет только один экземпляр сервиса; следующая пачка выбирается только
+ * после публикации предыдущей, поэтому при медленном получателе события
+ * накапливаются в БД.
+ */
+@JBossLog
+@ApplicationScoped
+public class OutboxRelay {
+
+    protected static final String LAG_METER = "otus.outbox.lag";
+    protected static final String PUBLISHED_METER = "otus.outbox.published";
+
+    @Inject
+    PgPool pool;
+
+    @Inject
+    OutboxDao outboxDao;
+
+    @Inject
+    Instance<OrderStatusEventSink> sinks;
+
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @ConfigProperty(name = "otus.outbox.relay.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "otus.outbox.batch-size", defaultValue = "100")
+    int batchSize;
+
+    @ConfigProperty(name = "otus.outbox.poll-interval", defaultValue = "PT1S")
+    Duration pollInterval;
+
+    private OrderStatusEventSink sink;
+    private Timer lagTimer;
+    private Counter publishedCounter;
+    private Cancellable polling;
+
+    @PostConstruct
+    void initRelay() {
+        sink = sinks.get();
+        lagTimer = Timer.builder(LAG_METER)
+                .description("Delay between order status change and event publication")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        publishedCounter = Counter.builder(PUBLISHED_METER)
+                .description("Published order status events")
+                .register(meterRegistry);
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        if (!enabled) {
+            return;
+        }
+        // A tick arriving while the outbox is still being drained is dropped
+        polling = Multi.createFrom().ticks().every(pollInterval)
+                .onOverflow().drop()
+                .onItem().transformToUniAndConcatenate(tick -> drainOutbox()
+                        .onFailure().invoke(failure -> log.error("outbox relay failed", failure))
+                        .onFailure().recoverWithItem(0L))
+                .subscribe().with(published -> {
+                    if (published > 0) {
+                        log.debugf("order status events published, count=%d", published);
+                    }
+                });
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        if (polling != null) {
+            polling.cancel();
+        }
+    }
+
+    /**
+     * Публикация всех событий из outbox
+     *
+     * @return количество опубликованных событий
+     */
+    public Uni<Long> drainOutbox() {
+        return Multi.createBy().repeating()
+                .uni(this::relayBatch)
+                .whilst(published -> published == batchSize)
+                .collect().with(Collectors.summingLong(Integer::longValue));
+    }
+
+    private Uni<Integer> relayBatch() {
+        return pool.withTransaction(conn -> outboxDao.tryLockRelay(conn)
+                .flatMap(locked -> locked
+                        ? outboxDao.findOldest(conn, batchSize)
+                        : Uni.createFrom().item(List.<OrderStatusEvent>of()))
+                .call(events -> events.isEmpty()
+                        ? Uni.createFrom().voidItem()
+                        : sink.publish(events)
+                                .chain(() -> outboxDao.deleteByIds(conn, events.stream()
+                                        .map(OrderStatusEvent::getId)
+                                        .toList()))))
+                .invoke(this::recordPublished)
+                .map(List::size);
+    }
+
+    private void recordPublished(List<OrderStatusEvent> events) {
+        final var now = LocalDateTime.now();
+        for (final var event : events) {
+            lagTimer.record(Duration.between(event.getCreatedAt(), now));
+        }
+        publishedCounter.increment(events.size());
+    }
+}
@@ -1,31 +1,203 @@
 package org.auwerk.otus.arch.orderservice.service.impl;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
+import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import javax.ws.rs.ProcessingException;
 
+import org.auwerk.otus.arch.orderservice.client.ClientGuard;
 import org.auwerk.otus.arch.orderservice.client.ProductServiceClient;
+import org.auwerk.otus.arch.orderservice.domain.PricingFlow;
+import org.auwerk.otus.arch.orderservice.exception.ClientUnavailableException;
 import org.auwerk.otus.arch.orderservice.exception.ProductNotAvailableException;
+import org.auwerk.otus.arch.orderservice.metrics.MetricsRecorder;
 import org.auwerk.otus.arch.orderservice.service.ProductService;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.rest.client.inject.RestClient;
 
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
+import lombok.extern.jbosslog.JBossLog;
 
+@JBossLog
 @ApplicationScoped
 public class ProductServiceImpl implements ProductService {
 
+    protected static final String PRICE_CACHE_NAME = "product-prices";
+    protected static final String PRICE_SNAPSHOT_CACHE_NAME = "product-price-snapshots";
+
+    private static final String CLIENT_NAME = "product-service";
+
     @Inject
     @RestClient
     ProductServiceClient client;
 
+    @Inject
+    MeterRegistry meterRegistry;
+
+    @Inject
+    MetricsRecorder metrics;
+
+    @ConfigProperty(name = "otus.product-service.max-concurrency", defaultValue = "8")
+    int maxConcurrency;
+
+    @ConfigProperty(name = "otus.product-service.timeout", defaultValue = "PT2S")
+    Duration timeout;
+
+    @ConfigProperty(name = "otus.product-service.max-in-flight", defaultValue = "64")
+    int maxInFlight;
+
+    @ConfigProperty(name = "otus.product-service.circuit-breaker.failure-threshold", defaultValue = "5")
+    int circuitFailureThreshold;
+
+    @ConfigProperty(name = "otus.product-service.circuit-breaker.open-duration", defaultValue = "PT10S")
+    Duration circuitOpenDuration;
+
+    @ConfigProperty(name = "otus.product-service.price-cache.ttl", defaultValue = "PT1M")
+    Duration priceCacheTtl;
+
+    @ConfigProperty(name = "otus.product-service.price-cache.max-size", defaultValue = "1000")
+    long priceCacheMaxSize;
+
+    @ConfigProperty(name = "otus.product-service.price-cache.bypass-flows", defaultValue = "ORDER_PLACEMENT")
+    Set<PricingFlow> priceCacheBypassFlows;
+
+    @ConfigProperty(name = "otus.product-service.stale-price.max-age", defaultValue = "PT30M")
+    Duration stalePriceMaxAge;
+
+    @ConfigProperty(name = "otus.product-service.stale-price.flows", defaultValue = "ORDER_POSITION")
+    Set<PricingFlow> stalePriceFlows;
+
+    AsyncCache<String, BigDecimal> priceCache;
+
+    /**
+     * Последние полученные от сервиса продуктов цены, используются в
+     * сценариях из stalePriceFlows, пока сервис продуктов недоступен
+     */
+    Cache<String, BigDecimal> priceSnapshots;
+
+    ClientGuard clientGuard;
+
+    @PostConstruct
+    void init() {
+        initPriceCache();
+        initClientGuard();
+    }
+
+    void initPriceCache() {
+        priceCache = Caffeine.newBuilder()
+                .expireAfterWrite(priceCacheTtl)
+                .maximumSize(priceCacheMaxSize)
+                .executor(Runnable::run)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, priceCache.synchronous(), PRICE_CACHE_NAME);
+        priceSnapshots = Caffeine.newBuilder()
+                .expireAfterWrite(stalePriceMaxAge)
+                .maximumSize(priceCacheMaxSize)
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, priceSnapshots, PRICE_SNAPSHOT_CACHE_NAME);
+    }
+
+    void initClientGuard() {
+        clientGuard = ClientGuard.builder()
+                .client(CLIENT_NAME)
+                .timeout(timeout)
+                .maxInFlight(maxInFlight)
+                .failureThreshold(circuitFailureThreshold)
+                .openDuration(circuitOpenDuration)
+                .registry(meterRegistry)
+                .build();
+    }
+
     @Override
-    public Uni<BigDecimal> getProductPrice(String productCode) {
-        return client.getProductByCode(productCode).map(product -> {
-            if (!Boolean.TRUE.equals(product.getAvailable())) {
-                throw new ProductNotAvailableException(productCode);
-            }
-            return product.getPrice();
-        });
+    public Uni<BigDecimal> getProductPrice(String productCode, PricingFlow flow) {
+        final Uni<BigDecimal> price;
+        if (priceCacheBypassFlows.contains(flow)) {
+            // Authoritative price is still used to refresh the cache for other flows
+            price = fetchProductPrice(productCode)
+                    .invoke(fetched -> priceCache.put(productCode, CompletableFuture.completedFuture(fetched)));
+        } else {
+            // Each caller waits on its own copy, so a caller cancelled by a failed sibling lookup in
+            // getProductPrices never cancels the shared load
+            price = Uni.createFrom().completionStage(() -> loadProductPrice(productCode).copy());
+        }
+        if (!stalePriceFlows.contains(flow)) {
+            return price;
+        }
+        // The last known price is served only while the product service can not be reached
+        return price
+                .onFailure(ProductServiceImpl::isServiceUnreachable)
+                .recoverWithUni(failure -> {
+                    final var snapshot = priceSnapshots.getIfPresent(productCode);
+                    if (snapshot == null) {
+                        return Uni.createFrom().failure(failure);
+                    }
+                    log.debugf("last known product price served, code=%s: %s", productCode, failure.getMessage());
+                    return Uni.createFrom().item(snapshot);
+                });
+    }
+
+    @Override
+    public Uni<Map<String, BigDecimal>> getProductPrices(Set<String> productCodes, PricingFlow flow) {
+        if (productCodes.isEmpty()) {
+            return Uni.createFrom().item(Map.of());
+        }
+        // Product service has no bulk endpoint, so lookups are fanned out with a
+        // bounded number of requests in flight
+        return Multi.createFrom().iterable(productCodes)
+                .onItem()
+                .transformToUni(productCode -> getProductPrice(productCode, flow)
+                        .map(price -> Map.entry(productCode, price)))
+                .merge(maxConcurrency)
+                .collect()
+                .asMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    /**
+     * Получение цены через кэш: одновременные промахи по одному продукту
+     * разделяют один запрос, неудачные запросы не кэшируются
+     */
+    private CompletableFuture<BigDecimal> loadProductPrice(String productCode) {
+        return priceCache.get(productCode, (code, executor) -> fetchProductPrice(code).subscribeAsCompletionStage());
+    }
+
+    /**
+     * Сервис продуктов недоступен: вызов отклонен или не дождался ответа
+     * ({@link ClientUnavailableException}) либо не удалось соединиться с
+     * сервисом; повторяющиеся ответы 5xx размыкают цепь и приводят к
+     * ClientUnavailableException
+     */
+    private static boolean isServiceUnreachable(Throwable failure) {
+        return failure instanceof ClientUnavailableException || failure instanceof ProcessingException;
+    }
+
+    private Uni<BigDecimal> fetchProductPrice(String productCode) {
+        return client.getProductByCode(productCode)
+                .plug(metrics.clientTimer(CLIENT_NAME, "getProductByCode"))
+                .plug(clientGuard.guard())
+                .map(product -> {
+                    if (!Boolean.TRUE.equals(product.getAvailable())) {
+                        throw new ProductNotAvailableException(productCode);
+                    }
+                    return product.getPrice();
+                })
+                .invoke(price -> priceSnapshots.put(productCode, price))
+                .onFailure(ProductNotAvailableException.class)
+                .invoke(() -> priceSnapshots.invalidate(productCode));
     }
 }
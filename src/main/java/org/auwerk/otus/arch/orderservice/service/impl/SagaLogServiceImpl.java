@@ -0,0 +1,111 @@
+package org.auwerk.otus.arch.orderservice.service.impl;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.auwerk.otus.arch.orderservice.dao.SagaLogDao;
+import org.auwerk.otus.arch.orderservice.domain.SagaExecution;
+import org.auwerk.otus.arch.orderservice.domain.SagaStatus;
+import org.auwerk.otus.arch.orderservice.domain.SagaStep;
+import org.auwerk.otus.arch.orderservice.domain.SagaStepEvent;
+import org.auwerk.otus.arch.orderservice.service.SagaLogService;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.subscription.UniEmitter;
+import io.vertx.mutiny.pgclient.PgPool;
+
+@ApplicationScoped
+public class SagaLogServiceImpl implements SagaLogService {
+
+    @Inject
+    PgPool pool;
+
+    @Inject
+    SagaLogDao sagaLogDao;
+
+    @ConfigProperty(name = "otus.saga-log.max-batch-size", defaultValue = "100")
+    int maxBatchSize;
+
+    private final Queue<PendingStep> pendingSteps = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    @Override
+    public Uni<Void> start(UUID sagaId, String saga, UUID orderId) {
+        final var now = LocalDateTime.now();
+        return sagaLogDao.insertExecution(pool, SagaExecution.builder()
+                .id(sagaId)
+                .saga(saga)
+                .orderId(orderId)
+                .status(SagaStatus.RUNNING)
+                .createdAt(now)
+                .updatedAt(now)
+                .build());
+    }
+
+    @Override
+    public Uni<Void> logStep(UUID sagaId, String step, SagaStepEvent event, List<UUID> resourceIds) {
+        final var sagaStep = SagaStep.builder()
+                .sagaId(sagaId)
+                .step(step)
+                .event(event)
+                .resourceIds(resourceIds)
+                .createdAt(LocalDateTime.now())
+                .build();
+        return Uni.createFrom().emitter(emitter -> {
+            pendingSteps.add(new PendingStep(sagaStep, emitter));
+            flush();
+        });
+    }
+
+    @Override
+    public Uni<Void> finish(UUID sagaId, SagaStatus status) {
+        return sagaLogDao.updateExecutionStatus(pool, sagaId, status);
+    }
+
+    /**
+     * Групповая запись: пока выполняется вставка одной пачки, новые записи
+     * накапливаются в очереди и уходят следующей пачкой
+     */
+    private void flush() {
+        if (!flushing.compareAndSet(false, true)) {
+            return;
+        }
+        final var batch = new ArrayList<PendingStep>();
+        PendingStep pendingStep;
+        while (batch.size() < maxBatchSize && (pendingStep = pendingSteps.poll()) != null) {
+            batch.add(pendingStep);
+        }
+        if (batch.isEmpty()) {
+            flushing.set(false);
+            // A step may have been queued after the poll but before the flag was reset
+            if (!pendingSteps.isEmpty()) {
+                flush();
+            }
+            return;
+        }
+        sagaLogDao.insertSteps(pool, batch.stream().map(PendingStep::step).toList())
+                .subscribe().with(
+                        ignored -> {
+                            batch.forEach(step -> step.emitter().complete(null));
+                            flushing.set(false);
+                            flush();
+                        },
+                        failure -> {
+                            batch.forEach(step -> step.emitter().fail(failure));
+                            flushing.set(false);
+                            flush();
+                        });
+    }
+
+    private static record PendingStep(SagaStep step, UniEmitter<? super Void> emitter) {
+    }
+}
@@ -0,0 +1,252 @@
+package org.auwerk.otus.arch.orderservice.service.impl;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import org.auwerk.otus.arch.orderservice.dao.OrderDao;
+import org.auwerk.otus.arch.orderservice.dao.OrderStatusChangeDao;
+import org.auwerk.otus.arch.orderservice.dao.OutboxDao;
+import org.auwerk.otus.arch.orderservice.dao.SagaLogDao;
+import org.auwerk.otus.arch.orderservice.domain.Order;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatus;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatusChange;
+import org.auwerk.otus.arch.orderservice.domain.SagaExecution;
+import org.auwerk.otus.arch.orderservice.domain.SagaStatus;
+import org.auwerk.otus.arch.orderservice.domain.SagaStep;
+import org.auwerk.otus.arch.orderservice.domain.SagaStepEvent;
+import org.auwerk.otus.arch.orderservice.service.BillingService;
+import org.auwerk.otus.arch.orderservice.service.LicenseService;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.quarkus.runtime.ShutdownEvent;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.subscription.Cancellable;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.SqlClient;
+import lombok.extern.jbosslog.JBossLog;
+
+/**
+ * Восстановление саг оплаты, прерванных сбоем. Журнал саг периодически
+ * опрашивается любым экземпляром сервиса; каждая незавершенная сага, не
+ * обновлявшаяся дольше заданного интервала, либо
+ * доводится до конца (все шаги выполнены, заказ не переведен в COMPLETED),
+ * либо компенсируется по идентификаторам ресурсов из журнала. Если исход
+ * какого-либо шага неизвестен, сага компенсируется насколько возможно и
+ * помечается как FAILED для ручного разбора.
+ */
+@JBossLog
+@ApplicationScoped
+public class SagaRecoveryWorker {
+
+    private static final List<String> PAY_ORDER_STEPS = List.of(
+            OrderServiceImpl.WITHDRAW_FUNDS_STEP,
+            OrderServiceImpl.CREATE_LICENSES_STEP);
+
+    @Inject
+    PgPool pool;
+
+    @Inject
+    SagaLogDao sagaLogDao;
+
+    @Inject
+    OrderDao orderDao;
+
+    @Inject
+    OrderStatusChangeDao statusChangeDao;
+
+    @Inject
+    OutboxDao outboxDao;
+
+    @Inject
+    BillingService billingService;
+
+    @Inject
+    LicenseService licenseService;
+
+    @Inject
+    OrderCache orderCache;
+
+    @ConfigProperty(name = "otus.saga-log.recovery.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "otus.saga-log.recovery.grace-period", defaultValue = "PT1M")
+    Duration gracePeriod;
+
+    @ConfigProperty(name = "otus.saga-log.recovery.poll-interval", defaultValue = "PT30S")
+    Duration pollInterval;
+
+    private Cancellable polling;
+
+    void onStart(@Observes StartupEvent event) {
+        if (!enabled) {
+            return;
+        }
+        // A tick arriving while the saga log is still being recovered is dropped
+        polling = Multi.createFrom().ticks().every(pollInterval)
+                .onOverflow().drop()
+                .onItem().transformToUniAndConcatenate(tick -> recoverStaleSagas()
+                        .onFailure().invoke(failure -> log.error("saga recovery failed", failure))
+                        .onFailure().recoverWithItem(0L))
+                .subscribe().with(recovered -> {
+                    if (recovered > 0) {
+                        log.infof("saga recovery finished, recovered=%d", recovered);
+                    }
+                });
+    }
+
+    void onStop(@Observes ShutdownEvent event) {
+        if (polling != null) {
+            polling.cancel();
+        }
+    }
+
+    /**
+     * Восстановление всех незавершенных саг
+     *
+     * @return количество обработанных саг
+     */
+    public Uni<Long> recoverStaleSagas() {
+        final var updatedBefore = LocalDateTime.now().minus(gracePeriod);
+        final Set<UUID> attempted = new HashSet<>();
+        return Multi.createBy().repeating()
+                .uni(() -> recoverNext(updatedBefore, attempted))
+                .until(recovered -> !recovered)
+                .collect().with(Collectors.counting());
+    }
+
+    /**
+     * Восстановление одной саги в отдельной транзакции; сага, восстановить
+     * которую не удалось, остается незавершенной и пропускается до следующего
+     * опроса
+     */
+    private Uni<Boolean> recoverNext(LocalDateTime updatedBefore, Set<UUID> attempted) {
+        final var attemptedBefore = attempted.size();
+        return pool.withTransaction(conn -> sagaLogDao.lockStaleExecution(conn, updatedBefore, List.copyOf(attempted))
+                .flatMap(execution -> {
+                    if (execution.isEmpty()) {
+                        return Uni.createFrom().item(Optional.<SagaExecution>empty());
+                    }
+                    attempted.add(execution.get().getId());
+                    return recoverSaga(conn, execution.get())
+                            .replaceWith(execution);
+                }))
+                .invoke(execution -> execution.ifPresent(e -> orderCache.invalidate(e.getOrderId())))
+                .map(Optional::isPresent)
+                // Failure of a claimed saga is already logged, recovery moves on to the next one
+                .onFailure(failure -> attempted.size() > attemptedBefore)
+                .recoverWithItem(true);
+    }
+
+    private Uni<SagaStatus> recoverSaga(SqlClient client, SagaExecution execution) {
+        return Uni.combine().all().unis(
+                sagaLogDao.findStepsBySagaId(client, execution.getId()),
+                orderDao.findById(client, execution.getOrderId()))
+                .asTuple()
+                .flatMap(tuple -> {
+                    final var steps = tuple.getItem1();
+                    final var order = tuple.getItem2();
+
+                    final Uni<SagaStatus> recovery;
+                    if (OrderStatus.COMPLETED.equals(order.getStatus())) {
+                        // Order status was committed, only the final saga log write was lost
+                        recovery = Uni.createFrom().item(SagaStatus.COMPLETED);
+                    } else if (PAY_ORDER_STEPS.stream().allMatch(step -> isSucceeded(steps, step))
+                            && PAY_ORDER_STEPS.stream().noneMatch(step -> isCompensated(steps, step))) {
+                        recovery = completeOrder(client, order)
+                                .replaceWith(SagaStatus.COMPLETED);
+                    } else {
+                        final var outcomeUnknown = PAY_ORDER_STEPS.stream()
+                                .anyMatch(step -> isStarted(steps, step) && !isSucceeded(steps, step)
+                                        && !isFailed(steps, step));
+                        recovery = compensate(execution.getId(), steps)
+                                .replaceWith(outcomeUnknown ? SagaStatus.FAILED : SagaStatus.COMPENSATED);
+                    }
+                    return recovery;
+                })
+                .call(status -> sagaLogDao.updateExecutionStatus(client, execution.getId(), status))
+                .invoke(status -> {
+                    if (SagaStatus.FAILED.equals(status)) {
+                        log.warnf("saga step outcome is unknown, manual reconciliation required, sagaId=%s, orderId=%s",
+                                execution.getId(), execution.getOrderId());
+                    }
+                })
+                .onFailure()
+                .invoke(failure -> log.errorf(failure, "saga recovery failed, sagaId=%s", execution.getId()));
+    }
+
+    private Uni<Void> completeOrder(SqlClient client, Order order) {
+        final var statusChange = OrderStatusChange.builder()
+                .status(OrderStatus.COMPLETED)
+                .createdAt(LocalDateTime.now())
+                .build();
+        return Uni.combine().all().unis(
+                statusChangeDao.insert(client, order.getId(), statusChange),
+                outboxDao.insert(client, order.getId(), statusChange),
+                orderDao.updateStatus(client, order.getId(), order.getVersion(), order.getStatus(),
+                        OrderStatus.COMPLETED))
+                .discardItems();
+    }
+
+    private Uni<Void> compensate(UUID sagaId, List<SagaStep> steps) {
+        final var compensations = new ArrayList<Uni<Void>>();
+        for (final var step : PAY_ORDER_STEPS) {
+            final var succeeded = findEvent(steps, step, SagaStepEvent.SUCCEEDED);
+            if (succeeded.isEmpty() || isCompensated(steps, step)) {
+                continue;
+            }
+            final var resourceIds = succeeded.get().getResourceIds();
+            final var compensation = OrderServiceImpl.WITHDRAW_FUNDS_STEP.equals(step)
+                    ? billingService.cancelOperation(resourceIds.get(0))
+                    : licenseService.deleteLicenses(resourceIds);
+            // Recorded outside the recovery transaction, so a step compensated before
+            // another one fails is not compensated again on the next run
+            compensations.add(compensation.call(() -> sagaLogDao.insertSteps(pool, List.of(SagaStep.builder()
+                    .sagaId(sagaId)
+                    .step(step)
+                    .event(SagaStepEvent.COMPENSATED)
+                    .resourceIds(List.of())
+                    .createdAt(LocalDateTime.now())
+                    .build()))));
+        }
+        if (compensations.isEmpty()) {
+            return Uni.createFrom().voidItem();
+        }
+        return Uni.join().all(compensations).andCollectFailures()
+                .replaceWithVoid();
+    }
+
+    private static boolean isStarted(List<SagaStep> steps, String step) {
+        return findEvent(steps, step, SagaStepEvent.STARTED).isPresent();
+    }
+
+    private static boolean isSucceeded(List<SagaStep> steps, String step) {
+        return findEvent(steps, step, SagaStepEvent.SUCCEEDED).isPresent();
+    }
+
+    private static boolean isFailed(List<SagaStep> steps, String step) {
+        return findEvent(steps, step, SagaStepEvent.FAILED).isPresent();
+    }
+
+    private static boolean isCompensated(List<SagaStep> steps, String step) {
+        return findEvent(steps, step, SagaStepEvent.COMPENSATED).isPresent();
+    }
+
+    private static Optional<SagaStep> findEvent(List<SagaStep> steps, String step, SagaStepEvent event) {
+        return steps.stream()
+                .filter(sagaStep -> step.equals(sagaStep.getStep()) && event.equals(sagaStep.getEvent()))
+                .findFirst();
+    }
+}
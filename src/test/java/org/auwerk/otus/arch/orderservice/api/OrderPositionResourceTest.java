@@ -1,5 +1,6 @@
 package org.auwerk.otus.arch.orderservice.api;
 
+import java.util.List;
 import java.util.UUID;
 
 import org.auwerk.otus.arch.orderservice.api.dto.AddOrderPositionRequestDto;
@@ -92,6 +93,65 @@ public class OrderPositionResourceTest extends AbstractAuthenticatedResourceTest
                 .body(Matchers.equalTo("order can not be changed, id=" + ORDER_ID));
     }
 
+    @Test
+    void addOrderPositions_success() {
+        final var otherPositionId = UUID.randomUUID();
+        Mockito.when(orderService.addOrderPositions(Mockito.eq(ORDER_ID), Mockito.anyList()))
+                .thenReturn(Uni.createFrom().item(List.of(POSITION_ID, otherPositionId)));
+
+        RestAssured.given()
+                .auth().oauth2(getAccessToken(USERNAME))
+                .contentType(ContentType.JSON)
+                .body(List.of(buildAddRequest(), buildAddRequest()))
+                .post("/batch")
+                .then()
+                .statusCode(200)
+                .body("positionId", Matchers.contains(POSITION_ID.toString(), otherPositionId.toString()));
+    }
+
+    @Test
+    void addOrderPositions_differentOrders() {
+        final var otherOrderRequest = buildAddRequest();
+        otherOrderRequest.setOrderId(UUID.randomUUID());
+
+        RestAssured.given()
+                .auth().oauth2(getAccessToken(USERNAME))
+                .contentType(ContentType.JSON)
+                .body(List.of(buildAddRequest(), otherOrderRequest))
+                .post("/batch")
+                .then()
+                .statusCode(400);
+
+        Mockito.verify(orderService, Mockito.never())
+                .addOrderPositions(Mockito.any(UUID.class), Mockito.anyList());
+    }
+
+    @Test
+    void addOrderPositions_incompletePosition() {
+        final var withoutProductCode = buildAddRequest();
+        withoutProductCode.setProductCode(null);
+        final var withoutQuantity = buildAddRequest();
+        withoutQuantity.setQuantity(null);
+
+        RestAssured.given()
+                .auth().oauth2(getAccessToken(USERNAME))
+                .contentType(ContentType.JSON)
+                .body(List.of(buildAddRequest(), withoutProductCode))
+                .post("/batch")
+                .then()
+                .statusCode(400);
+        RestAssured.given()
+                .auth().oauth2(getAccessToken(USERNAME))
+                .contentType(ContentType.JSON)
+                .body(List.of(withoutQuantity, buildAddRequest()))
+                .post("/batch")
+                .then()
+                .statusCode(400);
+
+        Mockito.verify(orderService, Mockito.never())
+                .addOrderPositions(Mockito.any(UUID.class), Mockito.anyList());
+    }
+
     @Test
     void removeOrderPosition_success() {
         Mockito.when(orderService.removeOrderPosition(POSITION_ID))
@@ -1,10 +1,18 @@
 package org.auwerk.otus.arch.orderservice.api;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import org.auwerk.otus.arch.orderservice.client.exception.billing.InsufficentFundsException;
 import org.auwerk.otus.arch.orderservice.domain.Order;
+import org.auwerk.otus.arch.orderservice.domain.OrderCursor;
+import org.auwerk.otus.arch.orderservice.domain.OrderDetail;
+import org.auwerk.otus.arch.orderservice.exception.ClientUnavailableException;
+import org.auwerk.otus.arch.orderservice.exception.ClientUnavailableException.Reason;
 import org.auwerk.otus.arch.orderservice.exception.OrderAlreadyPlacedException;
 import org.auwerk.otus.arch.orderservice.exception.OrderCreatedByDifferentUserException;
 import org.auwerk.otus.arch.orderservice.exception.OrderIsNotPlacedException;
@@ -28,13 +36,14 @@ public class OrderResourceTest extends AbstractAuthenticatedResourceTest {
 
     private static final String USERNAME = "customer";
     private static final UUID ORDER_ID = UUID.randomUUID();
+    private static final Set<OrderDetail> ALL_DETAILS = EnumSet.allOf(OrderDetail.class);
 
     @InjectMock
     OrderService orderService;
 
     @Test
     void getAllOrders() {
-        Mockito.when(orderService.getAllOrders(10, 1))
+        Mockito.when(orderService.getAllOrders(10, 1, ALL_DETAILS))
                 .thenReturn(Uni.createFrom().item(List.of(
                         Order.builder().build(),
                         Order.builder().build())));
@@ -50,7 +59,7 @@ public class OrderResourceTest extends AbstractAuthenticatedResourceTest {
 
     @Test
     void getAllOrders_defaultPageParams() {
-        Mockito.when(orderService.getAllOrders(10, 1))
+        Mockito.when(orderService.getAllOrders(10, 1, ALL_DETAILS))
                 .thenReturn(Uni.createFrom().item(List.of(
                         Order.builder().build(),
                         Order.builder().build())));
@@ -63,7 +72,82 @@ public class OrderResourceTest extends AbstractAuthenticatedResourceTest {
 
         Mockito.verify(orderService, Mockito.times(1))
                 .getAllOrders(Integer.valueOf(OrderResource.DEFAULT_PAGE_SIZE),
-                        Integer.valueOf(OrderResource.DEFAULT_PAGE));
+                        Integer.valueOf(OrderResource.DEFAULT_PAGE), ALL_DETAILS);
+    }
+
+    @Test
+    void getAllOrders_afterCursor() {
+        final var cursor = new OrderCursor(LocalDateTime.now(), ORDER_ID);
+        final var lastOrder = Order.builder()
+                .id(UUID.randomUUID())
+                .createdAt(LocalDateTime.now())
+                .build();
+        Mockito.when(orderService.getAllOrdersAfter(1, cursor, ALL_DETAILS))
+                .thenReturn(Uni.createFrom().item(List.of(lastOrder)));
+
+        RestAssured.given()
+                .auth().oauth2(getAccessToken(USERNAME))
+                .param("pageSize", 1)
+                .param("after", cursor.encode())
+                .get()
+                .then()
+                .statusCode(200)
+                .header(OrderResource.NEXT_PAGE_CURSOR_HEADER, OrderCursor.of(lastOrder).encode());
+    }
+
+    @Test
+    void getAllOrders_invalidCursor() {
+        RestAssured.given()
+                .auth().oauth2(getAccessToken(USERNAME))
+                .param("after", "not-a-cursor")
+                .get()
+                .then()
+                .statusCode(400);
+
+        Mockito.verify(orderService, Mockito.never())
+                .getAllOrdersAfter(Mockito.anyInt(), Mockito.any(), Mockito.anySet());
+    }
+
+    @Test
+    void getAllOrders_summaryView() {
+        Mockito.when(orderService.getAllOrders(10, 1, EnumSet.noneOf(OrderDetail.class)))
+                .thenReturn(Uni.createFrom().item(List.of(
+                        Order.builder().id(ORDER_ID).totalAmount(BigDecimal.TEN).positionCount(2).build())));
+
+        RestAssured.given()
+                .auth().oauth2(getAccessToken(USERNAME))
+                .param("view", OrderResource.SUMMARY_VIEW)
+                .get()
+                .then()
+                .statusCode(200)
+                .body("[0].positionCount", Matchers.equalTo(2))
+                .body("[0]", Matchers.not(Matchers.hasKey("positions")));
+    }
+
+    @Test
+    void getAllOrders_expandPositions() {
+        Mockito.when(orderService.getAllOrders(10, 1, EnumSet.of(OrderDetail.POSITIONS)))
+                .thenReturn(Uni.createFrom().item(List.of(Order.builder().build())));
+
+        RestAssured.given()
+                .auth().oauth2(getAccessToken(USERNAME))
+                .param("expand", OrderDetail.POSITIONS.getFieldName())
+                .get()
+                .then()
+                .statusCode(200);
+    }
+
+    @Test
+    void getAllOrders_invalidExpand() {
+        RestAssured.given()
+                .auth().oauth2(getAccessToken(USERNAME))
+                .param("expand", "licenses")
+                .get()
+                .then()
+                .statusCode(400);
+
+        Mockito.verify(orderService, Mockito.never())
+                .getAllOrders(Mockito.anyInt(), Mockito.anyInt(), Mockito.anySet());
     }
 
     @Test
@@ -175,6 +259,22 @@ public class OrderResourceTest extends AbstractAuthenticatedResourceTest {
                 .body(Matchers.equalTo("order was created by different user, id=" + ORDER_ID));
     }
 
+    @Test
+    void placeOrder_productServiceUnavailable() {
+        // when
+        Mockito.when(orderService.placeOrder(ORDER_ID))
+                .thenReturn(Uni.createFrom()
+                        .failure(new ClientUnavailableException("product-service", Reason.CIRCUIT_OPEN)));
+
+        // then
+        RestAssured.given()
+                .auth().oauth2(getAccessToken(USERNAME))
+                .put("/{orderId}/place", ORDER_ID)
+                .then()
+                .statusCode(503)
+                .body(Matchers.equalTo("service unavailable, client=product-service, reason=CIRCUIT_OPEN"));
+    }
+
     @Test
     void placeOrder_alreadyPlaced() {
         // when
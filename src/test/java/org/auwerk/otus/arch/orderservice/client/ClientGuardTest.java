@@ -0,0 +1,157 @@
+package org.auwerk.otus.arch.orderservice.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.WebApplicationException;
+
+import org.auwerk.otus.arch.orderservice.client.ClientGuard.CircuitState;
+import org.auwerk.otus.arch.orderservice.client.exception.billing.InsufficentFundsException;
+import org.auwerk.otus.arch.orderservice.exception.ClientUnavailableException;
+import org.auwerk.otus.arch.orderservice.exception.ClientUnavailableException.Reason;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.helpers.test.UniAssertSubscriber;
+
+public class ClientGuardTest {
+
+    private static final String CLIENT = "product-service";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void guard_timeout() {
+        // given
+        final var guard = buildGuard(Duration.ofMillis(10), 1, 5, Duration.ofSeconds(10));
+
+        // when
+        final var subscriber = Uni.createFrom().<String>nothing()
+                .plug(guard.guard())
+                .subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        final var failure = (ClientUnavailableException) subscriber
+                .awaitFailure()
+                .assertFailedWith(ClientUnavailableException.class)
+                .getFailure();
+        assertEquals(Reason.TIMEOUT, failure.getReason());
+        assertEquals(0.0, registry.get(ClientGuard.IN_FLIGHT).gauge().value());
+        assertEquals(1.0, registry.get(ClientGuard.REJECTIONS).tags("client", CLIENT, "reason", "timeout")
+                .counter().count());
+    }
+
+    @Test
+    void guard_bulkheadFull() {
+        // given
+        final var guard = buildGuard(Duration.ofSeconds(10), 1, 5, Duration.ofSeconds(10));
+
+        // when
+        final var pending = Uni.createFrom().<String>nothing()
+                .plug(guard.guard())
+                .subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+        final var subscriber = call(guard, Uni.createFrom().item("result"));
+
+        // then
+        final var failure = (ClientUnavailableException) subscriber
+                .assertFailedWith(ClientUnavailableException.class)
+                .getFailure();
+        assertEquals(Reason.BULKHEAD_FULL, failure.getReason());
+        assertEquals(0, calls.get());
+
+        pending.cancel();
+        assertEquals(0.0, registry.get(ClientGuard.IN_FLIGHT).gauge().value());
+    }
+
+    @Test
+    void guard_circuitOpened() {
+        // given
+        final var guard = buildGuard(Duration.ofSeconds(10), 10, 2, Duration.ofSeconds(10));
+
+        // when
+        call(guard, Uni.createFrom().failure(new IllegalStateException()));
+        call(guard, Uni.createFrom().failure(new WebApplicationException(503)));
+        final var subscriber = call(guard, Uni.createFrom().item("result"));
+
+        // then
+        final var failure = (ClientUnavailableException) subscriber
+                .assertFailedWith(ClientUnavailableException.class)
+                .getFailure();
+        assertEquals(Reason.CIRCUIT_OPEN, failure.getReason());
+        assertEquals(CircuitState.OPEN, guard.getState());
+        assertEquals(2, calls.get());
+        assertEquals(2.0, registry.get(ClientGuard.CIRCUIT_STATE).gauge().value());
+    }
+
+    @Test
+    void guard_halfOpenProbeSucceeded() {
+        // given
+        final var guard = buildGuard(Duration.ofSeconds(10), 10, 1, Duration.ZERO);
+
+        // when
+        call(guard, Uni.createFrom().failure(new IllegalStateException()));
+        final var subscriber = call(guard, Uni.createFrom().item("result"));
+
+        // then
+        subscriber.assertItem("result");
+        assertEquals(CircuitState.CLOSED, guard.getState());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void guard_halfOpenProbeFailed() {
+        // given
+        final var guard = buildGuard(Duration.ofSeconds(10), 10, 1, Duration.ZERO);
+
+        // when
+        call(guard, Uni.createFrom().failure(new IllegalStateException()));
+        final var subscriber = call(guard, Uni.createFrom().failure(new IllegalStateException()));
+
+        // then
+        subscriber.assertFailedWith(IllegalStateException.class);
+        assertEquals(CircuitState.OPEN, guard.getState());
+    }
+
+    @Test
+    void guard_clientErrorsNotCounted() {
+        // given
+        final var guard = buildGuard(Duration.ofSeconds(10), 10, 1, Duration.ofSeconds(10));
+
+        // when
+        call(guard, Uni.createFrom().failure(new WebApplicationException(404)));
+        call(guard, Uni.createFrom().failure(new InsufficentFundsException("insufficient funds")));
+        final var subscriber = call(guard, Uni.createFrom().item("result"));
+
+        // then
+        subscriber.assertItem("result");
+        assertEquals(CircuitState.CLOSED, guard.getState());
+    }
+
+    private UniAssertSubscriber<String> call(ClientGuard guard, Uni<String> response) {
+        return Uni.createFrom().deferred(() -> {
+            calls.incrementAndGet();
+            return response;
+        })
+                .plug(guard.guard())
+                .subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+    }
+
+    private ClientGuard buildGuard(Duration timeout, int maxInFlight, int failureThreshold, Duration openDuration) {
+        return ClientGuard.builder()
+                .client(CLIENT)
+                .timeout(timeout)
+                .maxInFlight(maxInFlight)
+                .failureThreshold(failureThreshold)
+                .openDuration(openDuration)
+                .ignoredFailure(InsufficentFundsException.class)
+                .registry(registry)
+                .build();
+    }
+}
@@ -0,0 +1,156 @@
+package org.auwerk.otus.arch.orderservice.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Element;
+
+/**
+ * Проверка того, что для фильтров и сортировок горячих запросов DAO в
+ * changelog объявлены подходящие индексы и что индексы одной таблицы не
+ * дублируют друг друга. Учитываются индексы, созданные как через
+ * {@code <createIndex>}, так и SQL-выражением, за вычетом удаленных
+ * последующими changeSet. Использование индексов планами запросов проверяет
+ * {@code DaoQueryPlanTest}.
+ */
+public class ChangelogIndexTest {
+
+    private static final Path CHANGELOG_PATH = Path.of("liquibase", "changelog", "db.changelog-master.xml");
+    private static final Pattern CREATE_INDEX_PATTERN = Pattern.compile(
+            "CREATE (UNIQUE )?INDEX (CONCURRENTLY )?(?:IF NOT EXISTS )?(\\w+)\\s+ON (\\w+) \\(([^)]*)\\)",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern DROP_INDEX_PATTERN = Pattern.compile(
+            "DROP INDEX (?:CONCURRENTLY )?(?:IF EXISTS )?(\\w+)", Pattern.CASE_INSENSITIVE);
+
+    private static final Map<String, IndexDefinition> indexes = new LinkedHashMap<>();
+
+    @BeforeAll
+    static void parseChangelog() throws Exception {
+        final var document = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(CHANGELOG_PATH.toFile());
+        final var changeSets = document.getElementsByTagName("changeSet");
+        for (int i = 0; i < changeSets.getLength(); i++) {
+            final var changeSet = (Element) changeSets.item(i);
+            final var runInTransaction = !"false".equals(changeSet.getAttribute("runInTransaction"));
+            final Set<String> createdTables = new HashSet<>();
+            // only direct children: statements inside <rollback> are not applied by update
+            for (var node = changeSet.getFirstChild(); node != null; node = node.getNextSibling()) {
+                if (!(node instanceof Element change)) {
+                    continue;
+                }
+                switch (change.getTagName()) {
+                    case "createTable" -> createdTables.add(change.getAttribute("tableName"));
+                    case "createIndex" -> addIndex(new IndexDefinition(change.getAttribute("indexName"),
+                            change.getAttribute("tableName"), columnNames(change),
+                            "true".equals(change.getAttribute("unique")), false, runInTransaction,
+                            createdTables.contains(change.getAttribute("tableName"))));
+                    case "sql" -> parseSql(change.getTextContent(), runInTransaction, createdTables);
+                    default -> {
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void ordersByUserNameAndCreatedAt() {
+        // OrderDaoImpl.findAllByUserName / findAllByUserNameAfter
+        assertIndexed("orders", "username", "created_at", "id");
+    }
+
+    @Test
+    void orderPositionsByOrderId() {
+        // OrderPositionDaoImpl.findAllByOrderId / findAllByOrderIds
+        assertIndexed("order_positions", "order_id");
+    }
+
+    @Test
+    void orderStatusChangesByOrderIdAndCreatedAt() {
+        // OrderStatusChangeDaoImpl.findAllByOrderId / findAllByOrderIds
+        assertIndexed("order_status_changes", "order_id", "created_at");
+    }
+
+    @Test
+    void indexesDoNotOverlap() {
+        assertFalse(indexes.isEmpty());
+        indexes.values().forEach(index -> indexes.values().stream()
+                .filter(other -> other != index && other.table().equals(index.table()))
+                .forEach(other -> assertFalse(!index.unique() && startsWith(other.columns(), index.columns()),
+                        "index " + index.name() + " is a prefix of " + other.name())));
+    }
+
+    @Test
+    void indexesOnExistingTablesAreCreatedConcurrently() {
+        // a unique index is built in the transaction that merges the duplicates it forbids
+        indexes.values().stream()
+                .filter(index -> !index.newTable() && !index.unique())
+                .forEach(index -> {
+                    assertTrue(index.concurrently(), "index is not created concurrently: " + index.name());
+                    assertFalse(index.runInTransaction(),
+                            "concurrent index creation must not run in transaction: " + index.name());
+                });
+    }
+
+    private static void parseSql(String sql, boolean runInTransaction, Set<String> createdTables) {
+        final var createMatcher = CREATE_INDEX_PATTERN.matcher(sql);
+        while (createMatcher.find()) {
+            final var columns = Arrays.stream(createMatcher.group(5).split(","))
+                    .map(column -> column.trim().split("\\s+")[0])
+                    .toList();
+            addIndex(new IndexDefinition(createMatcher.group(3), createMatcher.group(4), columns,
+                    createMatcher.group(1) != null, createMatcher.group(2) != null, runInTransaction,
+                    createdTables.contains(createMatcher.group(4))));
+        }
+        final var dropMatcher = DROP_INDEX_PATTERN.matcher(sql);
+        while (dropMatcher.find()) {
+            assertTrue(indexes.remove(dropMatcher.group(1)) != null,
+                    "dropped index is not declared: " + dropMatcher.group(1));
+        }
+    }
+
+    private static void addIndex(IndexDefinition index) {
+        assertTrue(indexes.put(index.name(), index) == null, "index is declared twice: " + index.name());
+    }
+
+    private static List<String> columnNames(Element createIndex) {
+        final var columns = createIndex.getElementsByTagName("column");
+        final List<String> names = new ArrayList<>();
+        for (int i = 0; i < columns.getLength(); i++) {
+            names.add(((Element) columns.item(i)).getAttribute("name"));
+        }
+        return names;
+    }
+
+    private static boolean startsWith(List<String> columns, List<String> prefix) {
+        return columns.size() >= prefix.size() && columns.subList(0, prefix.size()).equals(prefix);
+    }
+
+    private static void assertIndexed(String table, String... leadingColumns) {
+        final var expectedColumns = List.of(leadingColumns);
+        final var matchingIndexes = indexes.values().stream()
+                .filter(index -> table.equals(index.table()))
+                .filter(index -> startsWith(index.columns(), expectedColumns))
+                .toList();
+        assertEquals(1, matchingIndexes.size(),
+                "expected exactly one index on " + table + expectedColumns + ", found " + matchingIndexes);
+    }
+
+    private static record IndexDefinition(String name, String table, List<String> columns, boolean unique,
+            boolean concurrently, boolean runInTransaction, boolean newTable) {
+    }
+}
@@ -0,0 +1,221 @@
+package org.auwerk.otus.arch.orderservice.dao.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+import org.auwerk.otus.arch.orderservice.domain.OrderCursor;
+import org.auwerk.otus.arch.orderservice.metrics.MetricsRecorder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.helpers.test.UniAssertSubscriber;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.mutiny.core.Vertx;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.PreparedQuery;
+import io.vertx.mutiny.sqlclient.Row;
+import io.vertx.mutiny.sqlclient.RowSet;
+import io.vertx.mutiny.sqlclient.SqlClient;
+import io.vertx.mutiny.sqlclient.Tuple;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.sqlclient.PoolOptions;
+
+/**
+ * Проверка планов горячих запросов DAO: запрос, сформированный методом DAO,
+ * выполняется через EXPLAIN с теми же параметрами. Планировщику запрещены
+ * последовательное чтение таблиц и сортировка, поэтому узел Seq Scan или Sort
+ * в плане означает, что подходящего индекса нет. Запросы выполняются в
+ * PostgreSQL, запускаемом в контейнере; без Docker тесты пропускаются.
+ */
+public class DaoQueryPlanTest {
+
+    private static final String USERNAME = "customer";
+
+    // Tables and indexes read by the queries, as left by all changelog changeSets
+    private static final List<String> SCHEMA = List.of(
+            "CREATE TABLE orders (id uuid PRIMARY KEY, username varchar(255) NOT NULL, "
+                    + "status varchar(16) NOT NULL DEFAULT 'CREATED', created_at timestamp NOT NULL, "
+                    + "updated_at timestamp, version bigint NOT NULL DEFAULT 0, "
+                    + "total_amount decimal NOT NULL DEFAULT 0, position_count int NOT NULL DEFAULT 0)",
+            "CREATE TABLE order_positions (id uuid PRIMARY KEY, order_id uuid NOT NULL REFERENCES orders(id), "
+                    + "product_code varchar(64) NOT NULL, quantity bigint NOT NULL, price decimal)",
+            "CREATE TABLE order_status_changes (id uuid PRIMARY KEY, order_id uuid NOT NULL REFERENCES orders(id), "
+                    + "status varchar(16) NOT NULL, created_at timestamp NOT NULL)",
+            "CREATE INDEX idx_orders_username_created_at_id ON orders (username, created_at DESC, id DESC)",
+            "CREATE UNIQUE INDEX uq_order_positions_order_id_product_code "
+                    + "ON order_positions (order_id, product_code)",
+            "CREATE INDEX idx_order_status_changes_order_id_created_at "
+                    + "ON order_status_changes (order_id, created_at DESC) INCLUDE (id, status)");
+
+    private static PostgreSQLContainer<?> postgres;
+    private static Vertx vertx;
+    private static PgPool pool;
+
+    private final MetricsRecorder metrics = new MetricsRecorder(new SimpleMeterRegistry());
+    private final OrderDaoImpl orderDao = new OrderDaoImpl(metrics);
+    private final OrderPositionDaoImpl positionDao = new OrderPositionDaoImpl(metrics);
+    private final OrderStatusChangeDaoImpl statusChangeDao = new OrderStatusChangeDaoImpl(metrics);
+
+    @BeforeAll
+    static void startDatabase() {
+        assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Docker is not available");
+        postgres = new PostgreSQLContainer<>("postgres:14-alpine")
+                .withCommand("postgres", "-c", "fsync=off", "-c", "enable_seqscan=off",
+                        "-c", "enable_bitmapscan=off", "-c", "enable_sort=off");
+        postgres.start();
+        vertx = Vertx.vertx();
+        pool = PgPool.pool(vertx, new PgConnectOptions()
+                .setHost(postgres.getHost())
+                .setPort(postgres.getFirstMappedPort())
+                .setDatabase(postgres.getDatabaseName())
+                .setUser(postgres.getUsername())
+                .setPassword(postgres.getPassword()), new PoolOptions().setMaxSize(2));
+        SCHEMA.forEach(statement -> await(pool.query(statement).execute()));
+    }
+
+    @AfterAll
+    static void stopDatabase() {
+        if (pool != null) {
+            pool.closeAndAwait();
+        }
+        if (vertx != null) {
+            vertx.closeAndAwait();
+        }
+        if (postgres != null) {
+            postgres.stop();
+        }
+    }
+
+    @Test
+    void findAllByUserName_orderedByIndex() {
+        // when
+        final var plan = explain(client -> orderDao.findAllByUserName(client, USERNAME, 10, 2));
+
+        // then
+        assertIndexScan(plan, "idx_orders_username_created_at_id");
+        assertNotSorted(plan);
+    }
+
+    @Test
+    void findAllByUserNameAfter_orderedByIndex() {
+        // given
+        final var cursor = new OrderCursor(LocalDateTime.now(), UUID.randomUUID());
+
+        // when
+        final var plan = explain(client -> orderDao.findAllByUserNameAfter(client, USERNAME, cursor, 10));
+
+        // then
+        assertIndexScan(plan, "idx_orders_username_created_at_id");
+        assertNotSorted(plan);
+    }
+
+    @Test
+    void findAllPositionsByOrderId_indexScan() {
+        // when
+        final var plan = explain(client -> positionDao.findAllByOrderId(client, UUID.randomUUID()));
+
+        // then
+        assertIndexScan(plan, "uq_order_positions_order_id_product_code");
+    }
+
+    @Test
+    void findAllPositionsByOrderIds_indexScan() {
+        // when
+        final var plan = explain(client -> positionDao.findAllByOrderIds(client,
+                List.of(UUID.randomUUID(), UUID.randomUUID())));
+
+        // then
+        assertIndexScan(plan, "uq_order_positions_order_id_product_code");
+    }
+
+    @Test
+    void findAllStatusChangesByOrderId_orderedByIndex() {
+        // when
+        final var plan = explain(client -> statusChangeDao.findAllByOrderId(client, UUID.randomUUID()));
+
+        // then
+        assertIndexScan(plan, "idx_order_status_changes_order_id_created_at");
+        assertNotSorted(plan);
+    }
+
+    @Test
+    void findAllStatusChangesByOrderIds_indexScan() {
+        // when
+        final var plan = explain(client -> statusChangeDao.findAllByOrderIds(client,
+                List.of(UUID.randomUUID(), UUID.randomUUID())));
+
+        // then
+        assertIndexScan(plan, "idx_order_status_changes_order_id_created_at");
+    }
+
+    /**
+     * Выполнение метода DAO, в котором запрос заменен на EXPLAIN этого запроса
+     *
+     * @param call вызов метода DAO
+     * @return узлы плана запроса
+     */
+    @SuppressWarnings("unchecked")
+    private List<JsonObject> explain(Function<SqlClient, Uni<?>> call) {
+        final List<JsonObject> nodes = new ArrayList<>();
+        final var client = spy(pool);
+        doAnswer(prepare -> {
+            final PreparedQuery<RowSet<Row>> query = spy(
+                    pool.preparedQuery("EXPLAIN (FORMAT JSON) " + prepare.getArgument(0)));
+            doAnswer(execute -> ((Uni<RowSet<Row>>) execute.callRealMethod())
+                    .invoke(rowSet -> rowSet.forEach(row -> collectNodes(
+                            ((JsonArray) row.getValue(0)).getJsonObject(0).getJsonObject("Plan"), nodes))))
+                    .when(query).execute(any(Tuple.class));
+            return query;
+        }).when(client).preparedQuery(anyString());
+
+        // the DAO cannot map the plan rows, only the executed EXPLAIN matters
+        await(call.apply(client).onItemOrFailure().transform((item, failure) -> nodes));
+        assertFalse(nodes.isEmpty(), "query was not explained");
+        return nodes;
+    }
+
+    private static void collectNodes(JsonObject node, List<JsonObject> nodes) {
+        nodes.add(node);
+        final var children = node.getJsonArray("Plans");
+        if (children != null) {
+            children.forEach(child -> collectNodes((JsonObject) child, nodes));
+        }
+    }
+
+    private static void assertIndexScan(List<JsonObject> plan, String indexName) {
+        final var scans = plan.stream()
+                .filter(node -> node.getString("Relation Name") != null)
+                .toList();
+        assertEquals(1, scans.size(), "expected a single table scan: " + plan);
+        assertEquals(indexName, scans.get(0).getString("Index Name"), "unexpected scan: " + scans.get(0));
+    }
+
+    private static void assertNotSorted(List<JsonObject> plan) {
+        assertFalse(plan.stream().anyMatch(node -> "Sort".equals(node.getString("Node Type"))),
+                "query is sorted instead of reading the index in order: " + plan);
+    }
+
+    private static <T> T await(Uni<T> uni) {
+        return uni.subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .awaitItem()
+                .getItem();
+    }
+}
@@ -0,0 +1,190 @@
+package org.auwerk.otus.arch.orderservice.dao.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.auwerk.otus.arch.orderservice.domain.OrderPosition;
+import org.auwerk.otus.arch.orderservice.metrics.MetricsRecorder;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.helpers.test.UniAssertSubscriber;
+import io.vertx.mutiny.core.Vertx;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.Tuple;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.sqlclient.PoolOptions;
+
+/**
+ * Проверка итогов заказа (сумма и количество позиций), которые запросы DAO
+ * позиций обновляют вместе с позициями; итоги сверяются с пересчетом по
+ * позициям. Запросы выполняются в PostgreSQL, запускаемом в контейнере; без
+ * Docker тесты пропускаются.
+ */
+public class OrderPositionDaoImplTest {
+
+    private static final String USERNAME = "customer";
+    private static final String PRODUCT_CODE = "PRODUCT1";
+    private static final String OTHER_PRODUCT_CODE = "PRODUCT2";
+
+    // Schema of the orders and order_positions tables after all changelog changeSets
+    private static final List<String> SCHEMA = List.of(
+            "CREATE TABLE orders (id uuid PRIMARY KEY, username varchar(255) NOT NULL, "
+                    + "status varchar(16) NOT NULL DEFAULT 'CREATED', created_at timestamp NOT NULL, "
+                    + "updated_at timestamp, version bigint NOT NULL DEFAULT 0, "
+                    + "total_amount decimal NOT NULL DEFAULT 0, position_count int NOT NULL DEFAULT 0)",
+            "CREATE TABLE order_positions (id uuid PRIMARY KEY, order_id uuid NOT NULL REFERENCES orders(id), "
+                    + "product_code varchar(64) NOT NULL, quantity bigint NOT NULL, price decimal)",
+            "CREATE UNIQUE INDEX uq_order_positions_order_id_product_code "
+                    + "ON order_positions (order_id, product_code)");
+
+    private static PostgreSQLContainer<?> postgres;
+    private static Vertx vertx;
+    private static PgPool pool;
+
+    private final MetricsRecorder metrics = new MetricsRecorder(new SimpleMeterRegistry());
+    private final OrderDaoImpl orderDao = new OrderDaoImpl(metrics);
+    private final OrderPositionDaoImpl positionDao = new OrderPositionDaoImpl(metrics);
+
+    private UUID orderId;
+
+    @BeforeAll
+    static void startDatabase() {
+        assumeTrue(DockerClientFactory.instance().isDockerAvailable(), "Docker is not available");
+        postgres = new PostgreSQLContainer<>("postgres:14-alpine");
+        postgres.start();
+        vertx = Vertx.vertx();
+        pool = PgPool.pool(vertx, new PgConnectOptions()
+                .setHost(postgres.getHost())
+                .setPort(postgres.getFirstMappedPort())
+                .setDatabase(postgres.getDatabaseName())
+                .setUser(postgres.getUsername())
+                .setPassword(postgres.getPassword()), new PoolOptions().setMaxSize(2));
+        SCHEMA.forEach(statement -> await(pool.query(statement).execute()));
+    }
+
+    @AfterAll
+    static void stopDatabase() {
+        if (pool != null) {
+            pool.closeAndAwait();
+        }
+        if (vertx != null) {
+            vertx.closeAndAwait();
+        }
+        if (postgres != null) {
+            postgres.stop();
+        }
+    }
+
+    @BeforeEach
+    void createOrder() {
+        orderId = UUID.randomUUID();
+        await(orderDao.insert(pool, orderId, USERNAME, LocalDateTime.now()));
+    }
+
+    @Test
+    void upsert_totalsUpdated() {
+        // when
+        await(positionDao.upsert(pool, buildPosition(PRODUCT_CODE, 2, BigDecimal.TEN)));
+        await(positionDao.upsert(pool, buildPosition(OTHER_PRODUCT_CODE, 1, new BigDecimal("2.50"))));
+        await(positionDao.upsert(pool, buildPosition(PRODUCT_CODE, 3, BigDecimal.ONE)));
+
+        // then
+        assertTotals(new BigDecimal("52.50"), 2);
+    }
+
+    @Test
+    void upsert_withoutPrice() {
+        // when
+        await(positionDao.upsert(pool, buildPosition(PRODUCT_CODE, 2, null)));
+
+        // then
+        assertTotals(BigDecimal.ZERO, 1);
+    }
+
+    @Test
+    void upsertAll_totalsUpdated() {
+        // given
+        await(positionDao.upsert(pool, buildPosition(PRODUCT_CODE, 1, BigDecimal.TEN)));
+
+        // when
+        await(positionDao.upsertAll(pool, List.of(
+                buildPosition(PRODUCT_CODE, 2, BigDecimal.TEN),
+                buildPosition(OTHER_PRODUCT_CODE, 4, BigDecimal.ONE),
+                buildPosition(PRODUCT_CODE, 1, BigDecimal.TEN))));
+
+        // then
+        assertTotals(new BigDecimal("44"), 2);
+    }
+
+    @Test
+    void deleteById_totalsUpdated() {
+        // given
+        final var positionId = await(positionDao.upsert(pool, buildPosition(PRODUCT_CODE, 2, BigDecimal.TEN)));
+        await(positionDao.upsert(pool, buildPosition(OTHER_PRODUCT_CODE, 3, BigDecimal.ONE)));
+
+        // when
+        await(positionDao.deleteById(pool, positionId));
+
+        // then
+        assertTotals(new BigDecimal("3"), 1);
+    }
+
+    @Test
+    void updatePrices_totalsUpdated() {
+        // given
+        final var positionId = await(positionDao.upsert(pool, buildPosition(PRODUCT_CODE, 2, BigDecimal.TEN)));
+        final var otherPositionId = await(positionDao.upsert(pool, buildPosition(OTHER_PRODUCT_CODE, 3, null)));
+
+        // when
+        await(positionDao.updatePrices(pool, Map.of(
+                positionId, new BigDecimal("12.50"),
+                otherPositionId, BigDecimal.ONE)));
+
+        // then
+        assertTotals(new BigDecimal("28"), 2);
+    }
+
+    private void assertTotals(BigDecimal expectedAmount, int expectedCount) {
+        final var totals = await(pool.preparedQuery("SELECT o.total_amount, o.position_count, "
+                + "(SELECT coalesce(sum(coalesce(p.price, 0) * p.quantity), 0) FROM order_positions p "
+                + "WHERE p.order_id=o.id) AS actual_amount, "
+                + "(SELECT count(*) FROM order_positions p WHERE p.order_id=o.id) AS actual_count "
+                + "FROM orders o WHERE o.id=$1")
+                .execute(Tuple.of(orderId)))
+                .iterator().next();
+        assertEquals(0, expectedAmount.compareTo(totals.getBigDecimal("total_amount")),
+                "total_amount=" + totals.getBigDecimal("total_amount"));
+        assertEquals(expectedCount, totals.getInteger("position_count"));
+        assertEquals(0, totals.getBigDecimal("actual_amount").compareTo(totals.getBigDecimal("total_amount")));
+        assertEquals(totals.getLong("actual_count").intValue(), totals.getInteger("position_count"));
+    }
+
+    private OrderPosition buildPosition(String productCode, int quantity, BigDecimal price) {
+        return OrderPosition.builder()
+                .orderId(orderId)
+                .productCode(productCode)
+                .quantity(quantity)
+                .price(price)
+                .build();
+    }
+
+    private static <T> T await(Uni<T> uni) {
+        return uni.subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .awaitItem()
+                .getItem();
+    }
+}
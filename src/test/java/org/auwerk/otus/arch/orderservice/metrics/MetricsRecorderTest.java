@@ -0,0 +1,56 @@
+package org.auwerk.otus.arch.orderservice.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.helpers.test.UniAssertSubscriber;
+
+public class MetricsRecorderTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MetricsRecorder metrics = new MetricsRecorder(registry);
+
+    @Test
+    void queryTimer_success() {
+        // when
+        Uni.createFrom().item("result")
+                .plug(metrics.queryTimer("OrderDao", "findById"))
+                .subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem("result");
+
+        // then
+        assertEquals(1, registry.get(MetricsRecorder.DB_QUERY)
+                .tags("dao", "OrderDao", "statement", "findById", "outcome", MetricsRecorder.OUTCOME_SUCCESS)
+                .timer().count());
+    }
+
+    @Test
+    void clientTimer_failure() {
+        // when
+        Uni.createFrom().failure(new IllegalStateException())
+                .plug(metrics.clientTimer("product-service", "getProductByCode"))
+                .subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertFailedWith(IllegalStateException.class);
+
+        // then
+        assertEquals(1, registry.get(MetricsRecorder.CLIENT_REQUEST)
+                .tags("client", "product-service", "operation", "getProductByCode",
+                        "outcome", MetricsRecorder.OUTCOME_FAILURE)
+                .timer().count());
+    }
+
+    @Test
+    void sagaStepTimer_notSubscribed() {
+        // when
+        Uni.createFrom().voidItem()
+                .plug(metrics.sagaStepTimer("payOrder", "withdrawFunds", "workload"));
+
+        // then
+        assertEquals(0, registry.find(MetricsRecorder.SAGA_STEP).timers().size());
+    }
+}
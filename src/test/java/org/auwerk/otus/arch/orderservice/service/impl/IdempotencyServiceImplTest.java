@@ -0,0 +1,266 @@
+package org.auwerk.otus.arch.orderservice.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.auwerk.otus.arch.orderservice.dao.IdempotencyKeyDao;
+import org.auwerk.otus.arch.orderservice.domain.IdempotencyRecord;
+import org.auwerk.otus.arch.orderservice.domain.IdempotentResponse;
+import org.auwerk.otus.arch.orderservice.exception.IdempotencyKeyInProgressException;
+import org.auwerk.otus.arch.orderservice.exception.IdempotencyKeyMismatchException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.quarkus.security.identity.SecurityIdentity;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.helpers.test.UniAssertSubscriber;
+import io.smallrye.mutiny.operators.multi.processors.UnicastProcessor;
+import io.vertx.mutiny.pgclient.PgPool;
+
+public class IdempotencyServiceImplTest {
+
+    private static final String USERNAME = "user";
+    private static final String KEY = "key";
+    private static final String FINGERPRINT = "createOrder";
+    private static final IdempotentResponse RESPONSE = new IdempotentResponse(200, "{}");
+
+    private final PgPool pool = mock(PgPool.class);
+    private final IdempotencyKeyDao idempotencyKeyDao = mock(IdempotencyKeyDao.class);
+    private final SecurityIdentity securityIdentity = mock(SecurityIdentity.class);
+    private final IdempotencyServiceImpl service = new IdempotencyServiceImpl();
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @BeforeEach
+    void initService() {
+        service.pool = pool;
+        service.idempotencyKeyDao = idempotencyKeyDao;
+        service.securityIdentity = securityIdentity;
+        service.meterRegistry = new SimpleMeterRegistry();
+        service.ttl = Duration.ofHours(1);
+        service.lockTimeout = Duration.ofMinutes(1);
+        service.cacheMaxSize = 100;
+        service.initCache();
+    }
+
+    @BeforeEach
+    void mockUser() {
+        final var principal = mock(Principal.class);
+        when(principal.getName()).thenReturn(USERNAME);
+        when(securityIdentity.getPrincipal()).thenReturn(principal);
+    }
+
+    @BeforeEach
+    void mockDao() {
+        when(idempotencyKeyDao.complete(eq(pool), eq(USERNAME), eq(KEY), any(IdempotentResponse.class)))
+                .thenReturn(Uni.createFrom().voidItem());
+        when(idempotencyKeyDao.deleteByKey(pool, USERNAME, KEY))
+                .thenReturn(Uni.createFrom().voidItem());
+    }
+
+    @Test
+    void execute_success() {
+        // when
+        when(idempotencyKeyDao.tryClaim(eq(pool), any(IdempotencyRecord.class), any(LocalDateTime.class),
+                any(LocalDateTime.class)))
+                .thenReturn(Uni.createFrom().item(true));
+        service.execute(KEY, FINGERPRINT, request(RESPONSE)).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(RESPONSE);
+        final var subscriber = service.execute(KEY, FINGERPRINT, request(RESPONSE)).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertItem(RESPONSE);
+
+        assertEquals(1, executions.get());
+        verify(idempotencyKeyDao, times(1))
+                .tryClaim(eq(pool), any(IdempotencyRecord.class), any(LocalDateTime.class),
+                        any(LocalDateTime.class));
+        verify(idempotencyKeyDao, times(1))
+                .complete(pool, USERNAME, KEY, RESPONSE);
+    }
+
+    @Test
+    void execute_concurrentDuplicatesCoalesced() {
+        // given
+        final var response = UnicastProcessor.<IdempotentResponse>create();
+
+        // when
+        when(idempotencyKeyDao.tryClaim(eq(pool), any(IdempotencyRecord.class), any(LocalDateTime.class),
+                any(LocalDateTime.class)))
+                .thenReturn(Uni.createFrom().item(true));
+        final Supplier<Uni<IdempotentResponse>> request = () -> {
+            executions.incrementAndGet();
+            return response.toUni();
+        };
+        final var firstSubscriber = service.execute(KEY, FINGERPRINT, request).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+        final var secondSubscriber = service.execute(KEY, FINGERPRINT, request).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+        response.onNext(RESPONSE);
+
+        // then
+        firstSubscriber.assertItem(RESPONSE);
+        secondSubscriber.assertItem(RESPONSE);
+
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    void execute_cancelledCallerDoesNotCancelSharedExecution() {
+        // given
+        final var execution = new CompletableFuture<IdempotencyRecord>();
+        service.cache.put(new IdempotencyServiceImpl.CacheKey(USERNAME, KEY), execution);
+
+        // when
+        final var cancelledSubscriber = service.execute(KEY, FINGERPRINT, request(RESPONSE)).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+        final var subscriber = service.execute(KEY, FINGERPRINT, request(RESPONSE)).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+        cancelledSubscriber.cancel();
+        execution.complete(buildRecord(FINGERPRINT, RESPONSE));
+
+        // then
+        subscriber.assertItem(RESPONSE);
+        assertFalse(execution.isCancelled());
+
+        assertEquals(0, executions.get());
+    }
+
+    @Test
+    void execute_claimedExecutionCompletedAfterCallerCancelled() {
+        // given
+        final var response = UnicastProcessor.<IdempotentResponse>create();
+
+        // when
+        when(idempotencyKeyDao.tryClaim(eq(pool), any(IdempotencyRecord.class), any(LocalDateTime.class),
+                any(LocalDateTime.class)))
+                .thenReturn(Uni.createFrom().item(true));
+        final Supplier<Uni<IdempotentResponse>> request = () -> {
+            executions.incrementAndGet();
+            return response.toUni();
+        };
+        service.execute(KEY, FINGERPRINT, request).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .cancel();
+        response.onNext(RESPONSE);
+        final var subscriber = service.execute(KEY, FINGERPRINT, request).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertItem(RESPONSE);
+
+        assertEquals(1, executions.get());
+        verify(idempotencyKeyDao, times(1))
+                .complete(pool, USERNAME, KEY, RESPONSE);
+        verify(idempotencyKeyDao, never())
+                .deleteByKey(pool, USERNAME, KEY);
+    }
+
+    @Test
+    void execute_storedResponseReplayed() {
+        // when
+        when(idempotencyKeyDao.tryClaim(eq(pool), any(IdempotencyRecord.class), any(LocalDateTime.class),
+                any(LocalDateTime.class)))
+                .thenReturn(Uni.createFrom().item(false));
+        when(idempotencyKeyDao.findByKey(pool, USERNAME, KEY))
+                .thenReturn(Uni.createFrom().item(Optional.of(buildRecord(FINGERPRINT, RESPONSE))));
+        final var subscriber = service.execute(KEY, FINGERPRINT, request(RESPONSE)).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertItem(RESPONSE);
+
+        assertEquals(0, executions.get());
+    }
+
+    @Test
+    void execute_inProgress() {
+        // when
+        when(idempotencyKeyDao.tryClaim(eq(pool), any(IdempotencyRecord.class), any(LocalDateTime.class),
+                any(LocalDateTime.class)))
+                .thenReturn(Uni.createFrom().item(false));
+        when(idempotencyKeyDao.findByKey(pool, USERNAME, KEY))
+                .thenReturn(Uni.createFrom().item(Optional.of(buildRecord(FINGERPRINT, null))));
+        final var subscriber = service.execute(KEY, FINGERPRINT, request(RESPONSE)).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertFailedWith(IdempotencyKeyInProgressException.class);
+
+        assertEquals(0, executions.get());
+    }
+
+    @Test
+    void execute_fingerprintMismatch() {
+        // when
+        when(idempotencyKeyDao.tryClaim(eq(pool), any(IdempotencyRecord.class), any(LocalDateTime.class),
+                any(LocalDateTime.class)))
+                .thenReturn(Uni.createFrom().item(false));
+        when(idempotencyKeyDao.findByKey(pool, USERNAME, KEY))
+                .thenReturn(Uni.createFrom().item(Optional.of(buildRecord("payOrder", RESPONSE))));
+        final var subscriber = service.execute(KEY, FINGERPRINT, request(RESPONSE)).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertFailedWith(IdempotencyKeyMismatchException.class);
+    }
+
+    @Test
+    void execute_serverErrorNotStored() {
+        // given
+        final var serverError = new IdempotentResponse(500, "failure");
+
+        // when
+        when(idempotencyKeyDao.tryClaim(eq(pool), any(IdempotencyRecord.class), any(LocalDateTime.class),
+                any(LocalDateTime.class)))
+                .thenReturn(Uni.createFrom().item(true));
+        service.execute(KEY, FINGERPRINT, request(serverError)).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(serverError);
+        final var subscriber = service.execute(KEY, FINGERPRINT, request(RESPONSE)).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertItem(RESPONSE);
+
+        assertEquals(2, executions.get());
+        verify(idempotencyKeyDao, times(1))
+                .deleteByKey(pool, USERNAME, KEY);
+        verify(idempotencyKeyDao, never())
+                .complete(pool, USERNAME, KEY, serverError);
+    }
+
+    private Supplier<Uni<IdempotentResponse>> request(IdempotentResponse response) {
+        return () -> Uni.createFrom().item(() -> {
+            executions.incrementAndGet();
+            return response;
+        });
+    }
+
+    private static IdempotencyRecord buildRecord(String fingerprint, IdempotentResponse response) {
+        return IdempotencyRecord.builder()
+                .userName(USERNAME)
+                .key(KEY)
+                .fingerprint(fingerprint)
+                .response(response)
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+}
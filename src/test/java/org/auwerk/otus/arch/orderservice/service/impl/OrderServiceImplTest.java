@@ -1,53 +1,81 @@
 package org.auwerk.otus.arch.orderservice.service.impl;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anySet;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.math.BigDecimal;
 import java.security.Principal;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
 import org.auwerk.otus.arch.orderservice.client.exception.billing.InsufficentFundsException;
 import org.auwerk.otus.arch.orderservice.dao.OrderDao;
 import org.auwerk.otus.arch.orderservice.dao.OrderPositionDao;
 import org.auwerk.otus.arch.orderservice.dao.OrderStatusChangeDao;
+import org.auwerk.otus.arch.orderservice.dao.OutboxDao;
 import org.auwerk.otus.arch.orderservice.domain.Order;
+import org.auwerk.otus.arch.orderservice.domain.OrderCursor;
+import org.auwerk.otus.arch.orderservice.domain.OrderDetail;
 import org.auwerk.otus.arch.orderservice.domain.OrderPosition;
 import org.auwerk.otus.arch.orderservice.domain.OrderStatus;
 import org.auwerk.otus.arch.orderservice.domain.OrderStatusChange;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatusEvent;
+import org.auwerk.otus.arch.orderservice.domain.PricingFlow;
+import org.auwerk.otus.arch.orderservice.domain.SagaStatus;
+import org.auwerk.otus.arch.orderservice.domain.SagaStepEvent;
+import org.auwerk.otus.arch.orderservice.exception.ClientUnavailableException;
+import org.auwerk.otus.arch.orderservice.exception.ClientUnavailableException.Reason;
 import org.auwerk.otus.arch.orderservice.exception.OrderAlreadyPlacedException;
 import org.auwerk.otus.arch.orderservice.exception.OrderCanNotBeCanceledException;
 import org.auwerk.otus.arch.orderservice.exception.OrderCanNotBeChangedException;
+import org.auwerk.otus.arch.orderservice.exception.OrderConcurrentlyModifiedException;
 import org.auwerk.otus.arch.orderservice.exception.OrderCreatedByDifferentUserException;
 import org.auwerk.otus.arch.orderservice.exception.OrderIsNotPlacedException;
 import org.auwerk.otus.arch.orderservice.exception.OrderNotFoundException;
 import org.auwerk.otus.arch.orderservice.exception.OrderPositionNotFoundException;
 import org.auwerk.otus.arch.orderservice.exception.ProductNotAvailableException;
+import org.auwerk.otus.arch.orderservice.metrics.MetricsRecorder;
 import org.auwerk.otus.arch.orderservice.service.BillingService;
-import org.auwerk.otus.arch.orderservice.service.LicenseService;
-import org.auwerk.otus.arch.orderservice.service.OrderService;
 import org.auwerk.otus.arch.orderservice.service.ProductService;
+import org.auwerk.otus.arch.orderservice.service.SagaLogService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.quarkus.security.identity.SecurityIdentity;
 import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.helpers.test.AssertSubscriber;
 import io.smallrye.mutiny.helpers.test.UniAssertSubscriber;
+import io.smallrye.mutiny.subscription.BackPressureFailure;
 import io.vertx.mutiny.pgclient.PgPool;
 import io.vertx.mutiny.sqlclient.SqlConnection;
 
@@ -59,27 +87,86 @@ public class OrderServiceImplTest {
     private static final UUID POSITION_ID = UUID.randomUUID();
     private static final String PRODUCT_CODE = "PRODUCT1";
     private static final int QUANTITY = 16;
+    private static final Set<OrderDetail> ALL_DETAILS = EnumSet.allOf(OrderDetail.class);
 
     private final PgPool pool = mock(PgPool.class);
+    private final SqlConnection connection = mock(SqlConnection.class);
     private final OrderDao orderDao = mock(OrderDao.class);
     private final OrderPositionDao positionDao = mock(OrderPositionDao.class);
     private final OrderStatusChangeDao statusChangeDao = mock(OrderStatusChangeDao.class);
+    private final OutboxDao outboxDao = mock(OutboxDao.class);
     private final SecurityIdentity securityIdentity = mock(SecurityIdentity.class);
     private final ProductService productService = mock(ProductService.class);
-    private final LicenseService licenseService = mock(LicenseService.class);
+    private final LocalLicenseServiceImpl licenseService = spy(new LocalLicenseServiceImpl());
     private final BillingService billingService = mock(BillingService.class);
-    private final OrderService service = new OrderServiceImpl(pool, orderDao, positionDao, statusChangeDao,
-            securityIdentity, productService, licenseService, billingService);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MetricsRecorder metrics = new MetricsRecorder(meterRegistry);
+    private final OrderCache orderCache = new OrderCache();
+    private final SagaLogService sagaLog = mock(SagaLogService.class);
+    private final OrderStatusEventBus orderEvents = new OrderStatusEventBus();
+    private final OrderServiceImpl service = new OrderServiceImpl(pool, orderDao, positionDao, statusChangeDao,
+            outboxDao, securityIdentity, productService, licenseService, billingService, metrics, orderCache, sagaLog,
+            orderEvents);
+
+    @BeforeEach
+    void initOrderCache() {
+        orderCache.meterRegistry = meterRegistry;
+        orderCache.ttl = Duration.ofMinutes(1);
+        orderCache.maxSize = 100;
+        orderCache.initCache();
+    }
+
+    @BeforeEach
+    void initOrderEvents() {
+        orderEvents.bufferSize = 2;
+        orderEvents.orderCache = orderCache;
+    }
 
     @BeforeEach
     void mockTransaction() {
         when(pool.withTransaction(any()))
         .then(inv -> {
             final Function<SqlConnection, Uni<Order>> f = inv.getArgument(0);
-            return f.apply(null);
+            return f.apply(connection);
         });
     }
 
+    @BeforeEach
+    void mockSagaLog() {
+        when(sagaLog.start(any(UUID.class), anyString(), any(UUID.class)))
+                .thenReturn(Uni.createFrom().voidItem());
+        when(sagaLog.logStep(any(UUID.class), anyString(), any(SagaStepEvent.class), anyList()))
+                .thenReturn(Uni.createFrom().voidItem());
+        when(sagaLog.finish(any(UUID.class), any(SagaStatus.class)))
+                .thenReturn(Uni.createFrom().voidItem());
+    }
+
+    @BeforeEach
+    void mockOutbox() {
+        when(outboxDao.insert(any(SqlConnection.class), any(UUID.class), any(OrderStatusChange.class)))
+                .thenReturn(Uni.createFrom().voidItem());
+    }
+
+    @BeforeEach
+    void mockOrderStatus() {
+        when(orderDao.updateStatus(any(SqlConnection.class), any(UUID.class), anyLong(), any(OrderStatus.class),
+                any(OrderStatus.class)))
+                .thenReturn(Uni.createFrom().voidItem());
+    }
+
+    @BeforeEach
+    void mockOrderTouch() {
+        when(orderDao.touch(any(SqlConnection.class), any(UUID.class), any(OrderStatus.class)))
+                .thenReturn(Uni.createFrom().item(true));
+    }
+
+    @BeforeEach
+    void mockOrderTransition() {
+        when(orderDao.transitionStatus(any(SqlConnection.class), any(UUID.class), anyString(), nullable(Long.class),
+                anySet(), any(OrderStatusChange.class)))
+                .thenReturn(Uni.createFrom().item(true));
+    }
+
     @BeforeEach
     void mockUser() {
         var principal = mock(Principal.class);
@@ -93,25 +180,47 @@ public class OrderServiceImplTest {
         final var pageSize = 10;
         final var page = 1;
 
+        final var firstOrderId = UUID.randomUUID();
+        final var secondOrderId = UUID.randomUUID();
+        final var thirdOrderId = UUID.randomUUID();
+
         // when
         when(orderDao.findAllByUserName(eq(pool), anyString(), anyInt(), anyInt()))
                 .thenReturn(Uni.createFrom().item(List.of(
-                        Order.builder().id(UUID.randomUUID()).build(),
-                        Order.builder().id(UUID.randomUUID()).build(),
-                        Order.builder().id(UUID.randomUUID()).build())));
-        final var subscriber = service.getAllOrders(pageSize, page).subscribe()
+                        Order.builder().id(firstOrderId).build(),
+                        Order.builder().id(secondOrderId).build(),
+                        Order.builder().id(thirdOrderId).build())));
+        when(positionDao.findAllByOrderIds(eq(pool), anyList()))
+                .thenReturn(Uni.createFrom().item(List.of(
+                        OrderPosition.builder().orderId(firstOrderId).build(),
+                        OrderPosition.builder().orderId(firstOrderId).build(),
+                        OrderPosition.builder().orderId(secondOrderId).build())));
+        when(statusChangeDao.findAllByOrderIds(eq(pool), anyList()))
+                .thenReturn(Uni.createFrom().item(List.of(
+                        OrderStatusChange.builder().orderId(firstOrderId).status(OrderStatus.CREATED).build(),
+                        OrderStatusChange.builder().orderId(secondOrderId).status(OrderStatus.CREATED).build(),
+                        OrderStatusChange.builder().orderId(thirdOrderId).status(OrderStatus.CREATED).build())));
+        final var subscriber = service.getAllOrders(pageSize, page, ALL_DETAILS).subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
 
         // then
         final var orders = subscriber.assertCompleted().getItem();
         assertNotNull(orders);
         assertEquals(3, orders.size());
+        assertEquals(2, orders.get(0).getPositions().size());
+        assertEquals(1, orders.get(1).getPositions().size());
+        assertEquals(0, orders.get(2).getPositions().size());
+        orders.forEach(order -> assertEquals(1, order.getStatusChanges().size()));
 
         verify(orderDao, times(1))
                 .findAllByUserName(eq(pool), eq(USERNAME), eq(pageSize), eq(page));
-        verify(positionDao, times(3))
+        verify(positionDao, times(1))
+                .findAllByOrderIds(pool, List.of(firstOrderId, secondOrderId, thirdOrderId));
+        verify(statusChangeDao, times(1))
+                .findAllByOrderIds(pool, List.of(firstOrderId, secondOrderId, thirdOrderId));
+        verify(positionDao, never())
                 .findAllByOrderId(eq(pool), any(UUID.class));
-        verify(statusChangeDao, times(3))
+        verify(statusChangeDao, never())
                 .findAllByOrderId(eq(pool), any(UUID.class));
     }
 
@@ -124,7 +233,7 @@ public class OrderServiceImplTest {
         // when
         when(orderDao.findAllByUserName(eq(pool), anyString(), anyInt(), anyInt()))
                 .thenReturn(Uni.createFrom().item(Collections.emptyList()));
-        final var subscriber = service.getAllOrders(pageSize, page).subscribe()
+        final var subscriber = service.getAllOrders(pageSize, page, ALL_DETAILS).subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
 
         // then
@@ -135,9 +244,85 @@ public class OrderServiceImplTest {
         verify(orderDao, times(1))
                 .findAllByUserName(eq(pool), eq(USERNAME), eq(pageSize), eq(page));
         verify(positionDao, never())
-                .findAllByOrderId(eq(pool), any(UUID.class));
+                .findAllByOrderIds(eq(pool), anyList());
         verify(statusChangeDao, never())
-                .findAllByOrderId(eq(pool), any(UUID.class));
+                .findAllByOrderIds(eq(pool), anyList());
+    }
+
+    @Test
+    void getAllOrders_summary() {
+        // given
+        final var pageSize = 10;
+        final var page = 1;
+
+        // when
+        when(orderDao.findAllByUserName(eq(pool), anyString(), anyInt(), anyInt()))
+                .thenReturn(Uni.createFrom().item(List.of(buildOrder(OrderStatus.CREATED))));
+        final var subscriber = service.getAllOrders(pageSize, page, EnumSet.noneOf(OrderDetail.class)).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        final var orders = subscriber.assertCompleted().getItem();
+        assertEquals(1, orders.size());
+        assertNull(orders.get(0).getPositions());
+        assertNull(orders.get(0).getStatusChanges());
+
+        verify(positionDao, never())
+                .findAllByOrderIds(eq(pool), anyList());
+        verify(statusChangeDao, never())
+                .findAllByOrderIds(eq(pool), anyList());
+    }
+
+    @Test
+    void getAllOrders_positionsOnly() {
+        // given
+        final var pageSize = 10;
+        final var page = 1;
+
+        // when
+        when(orderDao.findAllByUserName(eq(pool), anyString(), anyInt(), anyInt()))
+                .thenReturn(Uni.createFrom().item(List.of(buildOrder(OrderStatus.CREATED))));
+        when(positionDao.findAllByOrderIds(eq(pool), anyList()))
+                .thenReturn(Uni.createFrom().item(List.of(buildPosition(UUID.randomUUID()))));
+        final var subscriber = service.getAllOrders(pageSize, page, EnumSet.of(OrderDetail.POSITIONS)).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        final var orders = subscriber.assertCompleted().getItem();
+        assertEquals(1, orders.get(0).getPositions().size());
+        assertNull(orders.get(0).getStatusChanges());
+
+        verify(statusChangeDao, never())
+                .findAllByOrderIds(eq(pool), anyList());
+    }
+
+    @Test
+    void getAllOrdersAfter_success() {
+        // given
+        final var pageSize = 10;
+        final var cursor = new OrderCursor(LocalDateTime.now(), UUID.randomUUID());
+        final var orderId = UUID.randomUUID();
+
+        // when
+        when(orderDao.findAllByUserNameAfter(eq(pool), anyString(), any(OrderCursor.class), anyInt()))
+                .thenReturn(Uni.createFrom().item(List.of(Order.builder().id(orderId).build())));
+        when(positionDao.findAllByOrderIds(eq(pool), anyList()))
+                .thenReturn(Uni.createFrom().item(List.of()));
+        when(statusChangeDao.findAllByOrderIds(eq(pool), anyList()))
+                .thenReturn(Uni.createFrom().item(List.of()));
+        final var subscriber = service.getAllOrdersAfter(pageSize, cursor, ALL_DETAILS).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        final var orders = subscriber.assertCompleted().getItem();
+        assertEquals(1, orders.size());
+
+        verify(orderDao, times(1))
+                .findAllByUserNameAfter(pool, USERNAME, cursor, pageSize);
+        verify(positionDao, times(1))
+                .findAllByOrderIds(pool, List.of(orderId));
+        verify(statusChangeDao, times(1))
+                .findAllByOrderIds(pool, List.of(orderId));
     }
 
     @Test
@@ -194,12 +379,227 @@ public class OrderServiceImplTest {
         assertEquals(ORDER_ID, failure.getOrderId());
     }
 
+    @Test
+    void getOrderById_cached() {
+        // given
+        final var order = buildOrder(OrderStatus.CREATED);
+
+        // when
+        when(orderDao.findById(pool, ORDER_ID))
+                .thenReturn(Uni.createFrom().item(order));
+        service.getOrderById(ORDER_ID).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(order);
+        final var subscriber = service.getOrderById(ORDER_ID).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertItem(order);
+
+        verify(orderDao, times(1))
+                .findById(pool, ORDER_ID);
+        assertEquals(1.0, meterRegistry.get("cache.gets")
+                .tags("cache", OrderCache.CACHE_NAME, "result", "hit")
+                .functionCounter().count());
+    }
+
+    @Test
+    void getOrderById_concurrentCallsCoalesced() {
+        // given
+        final var order = buildOrder(OrderStatus.CREATED);
+        final var loadedOrder = new CompletableFuture<Order>();
+        orderCache.cache.put(ORDER_ID, loadedOrder);
+
+        // when
+        final var cancelledSubscriber = service.getOrderById(ORDER_ID).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+        final var subscriber = service.getOrderById(ORDER_ID).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+        cancelledSubscriber.cancel();
+        loadedOrder.complete(order);
+
+        // then
+        subscriber.assertItem(order);
+        assertFalse(loadedOrder.isCancelled());
+
+        verify(orderDao, never())
+                .findById(pool, ORDER_ID);
+    }
+
+    @Test
+    void getOrderById_cachedCreatedByDifferentUser() {
+        // given
+        final var order = buildOrder(OrderStatus.CREATED);
+        final var otherPrincipal = mock(Principal.class);
+        when(otherPrincipal.getName()).thenReturn("other-user");
+
+        // when
+        when(orderDao.findById(pool, ORDER_ID))
+                .thenReturn(Uni.createFrom().item(order));
+        service.getOrderById(ORDER_ID).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(order);
+        when(securityIdentity.getPrincipal()).thenReturn(otherPrincipal);
+        final var subscriber = service.getOrderById(ORDER_ID).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertFailedWith(OrderCreatedByDifferentUserException.class);
+
+        verify(orderDao, times(1))
+                .findById(pool, ORDER_ID);
+    }
+
+    @Test
+    void getOrderById_invalidatedByCancelOrder() {
+        // given
+        final var order = buildOrder(OrderStatus.CREATED);
+
+        // when
+        when(orderDao.findById(pool, ORDER_ID))
+                .thenReturn(Uni.createFrom().item(order));
+        when(orderDao.findById(connection, ORDER_ID))
+                .thenReturn(Uni.createFrom().item(order));
+        service.getOrderById(ORDER_ID).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(order);
+        service.cancelOrder(ORDER_ID).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertCompleted();
+        service.getOrderById(ORDER_ID).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(order);
+
+        // then
+        verify(orderDao, times(2))
+                .findById(pool, ORDER_ID);
+    }
+
+    @Test
+    void getOrderById_invalidatedByStatusEvent() {
+        // given
+        final var order = buildOrder(OrderStatus.PLACED);
+
+        // when
+        when(orderDao.findById(pool, ORDER_ID))
+                .thenReturn(Uni.createFrom().item(order));
+        service.getOrderById(ORDER_ID).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(order);
+        orderEvents.publish(buildEvent(1L, OrderStatus.COMPLETED));
+        service.getOrderById(ORDER_ID).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(order);
+
+        // then
+        verify(orderDao, times(2))
+                .findById(pool, ORDER_ID);
+    }
+
+    @Test
+    void getOrderEvents_success() {
+        // given
+        final var order = buildOrder(OrderStatus.CREATED);
+        final var placed = buildEvent(1L, OrderStatus.PLACED);
+        final var completed = buildEvent(2L, OrderStatus.COMPLETED);
+
+        // when
+        when(orderDao.findById(pool, ORDER_ID))
+                .thenReturn(Uni.createFrom().item(order));
+        final var subscriber = service.getOrderEvents(ORDER_ID).subscribe()
+                .withSubscriber(AssertSubscriber.create(10));
+        orderEvents.publish(placed);
+        orderEvents.publish(buildEvent(UUID.randomUUID(), 3L, OrderStatus.CANCELED));
+        orderEvents.publish(completed);
+
+        // then
+        subscriber.assertCompleted();
+        final var events = subscriber.getItems();
+        assertEquals(3, events.size());
+        assertEquals(OrderStatus.CREATED, events.get(0).getStatus());
+        assertEquals(List.of(placed, completed), events.subList(1, 3));
+    }
+
+    @Test
+    void getOrderEvents_terminalStatus() {
+        // given
+        final var order = buildOrder(OrderStatus.CANCELED);
+
+        // when
+        when(orderDao.findById(pool, ORDER_ID))
+                .thenReturn(Uni.createFrom().item(order));
+        final var subscriber = service.getOrderEvents(ORDER_ID).subscribe()
+                .withSubscriber(AssertSubscriber.create(10));
+
+        // then
+        subscriber.assertCompleted();
+        assertEquals(1, subscriber.getItems().size());
+        assertEquals(OrderStatus.CANCELED, subscriber.getItems().get(0).getStatus());
+    }
+
+    @Test
+    void getOrderEvents_currentStatusNotCached() {
+        // given
+        final var order = buildOrder(OrderStatus.PLACED);
+        final var completedOrder = buildOrder(OrderStatus.COMPLETED);
+
+        // when
+        when(orderDao.findById(pool, ORDER_ID))
+                .thenReturn(Uni.createFrom().item(order))
+                .thenReturn(Uni.createFrom().item(completedOrder));
+        service.getOrderById(ORDER_ID).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(order);
+        final var subscriber = service.getOrderEvents(ORDER_ID).subscribe()
+                .withSubscriber(AssertSubscriber.create(10));
+
+        // then
+        subscriber.assertCompleted();
+        assertEquals(1, subscriber.getItems().size());
+        assertEquals(OrderStatus.COMPLETED, subscriber.getItems().get(0).getStatus());
+    }
+
+    @Test
+    void getOrderEvents_createdByDifferentUser() {
+        // given
+        final var order = buildOrder(OrderStatus.PLACED);
+        order.setUserName("other-user");
+
+        // when
+        when(orderDao.findById(pool, ORDER_ID))
+                .thenReturn(Uni.createFrom().item(order));
+        final var subscriber = service.getOrderEvents(ORDER_ID).subscribe()
+                .withSubscriber(AssertSubscriber.create(10));
+
+        // then
+        subscriber.assertFailedWith(OrderCreatedByDifferentUserException.class);
+    }
+
+    @Test
+    void getOrderEvents_bufferOverflow() {
+        // given
+        final var order = buildOrder(OrderStatus.PLACED);
+
+        // when
+        when(orderDao.findById(pool, ORDER_ID))
+                .thenReturn(Uni.createFrom().item(order));
+        final var subscriber = service.getOrderEvents(ORDER_ID).subscribe()
+                .withSubscriber(AssertSubscriber.create(1));
+        for (long id = 1; id <= 3; id++) {
+            orderEvents.publish(buildEvent(id, OrderStatus.PLACED));
+        }
+        subscriber.request(10);
+
+        // then
+        subscriber.assertFailedWith(BackPressureFailure.class);
+    }
+
     @Test
     void createOrder_success() {
         // when
-        when(orderDao.insert(eq(pool), any(UUID.class), anyString(), any(LocalDateTime.class)))
+        when(orderDao.insert(eq(connection), any(UUID.class), anyString(), any(LocalDateTime.class)))
                 .thenReturn(Uni.createFrom().voidItem());
-        when(statusChangeDao.insert(eq(pool), any(UUID.class), any(OrderStatusChange.class)))
+        when(statusChangeDao.insert(eq(connection), any(UUID.class), any(OrderStatusChange.class)))
                 .thenReturn(Uni.createFrom().voidItem());
         final var subscriber = service.createOrder().subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
@@ -208,9 +608,9 @@ public class OrderServiceImplTest {
         subscriber.assertCompleted();
 
         verify(orderDao, times(1))
-                .insert(eq(pool), any(UUID.class), eq(USERNAME), any(LocalDateTime.class));
+                .insert(eq(connection), any(UUID.class), eq(USERNAME), any(LocalDateTime.class));
         verify(statusChangeDao, times(1))
-                .insert(eq(pool), any(UUID.class), argThat(sc -> OrderStatus.CREATED.equals(sc.getStatus())));
+                .insert(eq(connection), any(UUID.class), argThat(sc -> OrderStatus.CREATED.equals(sc.getStatus())));
     }
 
     @Test
@@ -220,11 +620,11 @@ public class OrderServiceImplTest {
         final var productPrice = BigDecimal.TEN;
 
         // when
-        when(productService.getProductPrice(PRODUCT_CODE))
+        when(productService.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION))
                 .thenReturn(Uni.createFrom().item(productPrice));
-        when(orderDao.findById(pool, ORDER_ID))
+        when(orderDao.findById(connection, ORDER_ID))
                 .thenReturn(Uni.createFrom().item(order));
-        when(positionDao.insert(eq(pool), any(OrderPosition.class)))
+        when(positionDao.upsert(eq(connection), any(OrderPosition.class)))
                 .thenReturn(Uni.createFrom().item(POSITION_ID));
         final var subscriber = service.addOrderPosition(ORDER_ID, PRODUCT_CODE, QUANTITY).subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
@@ -232,15 +632,19 @@ public class OrderServiceImplTest {
         // then
         subscriber.assertItem(POSITION_ID);
         verify(positionDao, times(1))
-                .insert(eq(pool),
+                .upsert(eq(connection),
                         argThat(p -> ORDER_ID.equals(p.getOrderId()) && PRODUCT_CODE.equals(p.getProductCode())
                                 && QUANTITY == p.getQuantity() && productPrice.equals(p.getPrice())));
+        verify(orderDao, times(1))
+                .touch(connection, ORDER_ID, OrderStatus.CREATED);
+        verify(orderDao, never())
+                .updateStatus(eq(connection), eq(ORDER_ID), anyLong(), any(OrderStatus.class), any(OrderStatus.class));
     }
 
     @Test
     void addOrderPosition_orderNotFound() {
         // when
-        when(orderDao.findById(pool, ORDER_ID))
+        when(orderDao.findById(connection, ORDER_ID))
                 .thenReturn(Uni.createFrom().failure(new NoSuchElementException()));
         final var subscriber = service.addOrderPosition(ORDER_ID, PRODUCT_CODE, QUANTITY).subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
@@ -252,7 +656,7 @@ public class OrderServiceImplTest {
         assertEquals(ORDER_ID, failure.getOrderId());
 
         verify(positionDao, never())
-                .insert(eq(pool), argThat(p -> ORDER_ID.equals(p.getOrderId())));
+                .upsert(eq(connection), argThat(p -> ORDER_ID.equals(p.getOrderId())));
     }
 
     @Test
@@ -261,9 +665,9 @@ public class OrderServiceImplTest {
         final var order = buildOrder(OrderStatus.CREATED);
 
         // when
-        when(productService.getProductPrice(PRODUCT_CODE))
+        when(productService.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION))
                 .thenReturn(Uni.createFrom().failure(new ProductNotAvailableException(PRODUCT_CODE)));
-        when(orderDao.findById(pool, ORDER_ID))
+        when(orderDao.findById(connection, ORDER_ID))
                 .thenReturn(Uni.createFrom().item(order));
         final var subscriber = service.addOrderPosition(ORDER_ID, PRODUCT_CODE, QUANTITY).subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
@@ -275,7 +679,7 @@ public class OrderServiceImplTest {
         assertEquals(PRODUCT_CODE, failure.getProductCode());
 
         verify(positionDao, never())
-                .insert(eq(pool), argThat(p -> ORDER_ID.equals(p.getOrderId())));
+                .upsert(eq(connection), argThat(p -> ORDER_ID.equals(p.getOrderId())));
     }
 
     @Test
@@ -284,9 +688,9 @@ public class OrderServiceImplTest {
         final var order = buildOrder(OrderStatus.PLACED);
 
         // when
-        when(productService.getProductPrice(PRODUCT_CODE))
+        when(productService.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION))
                 .thenReturn(Uni.createFrom().item(BigDecimal.TEN));
-        when(orderDao.findById(pool, ORDER_ID))
+        when(orderDao.findById(connection, ORDER_ID))
                 .thenReturn(Uni.createFrom().item(order));
         final var subscriber = service.addOrderPosition(ORDER_ID, PRODUCT_CODE, QUANTITY).subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
@@ -298,7 +702,91 @@ public class OrderServiceImplTest {
         assertEquals(ORDER_ID, failure.getOrderId());
 
         verify(positionDao, never())
-                .insert(eq(pool), argThat(p -> ORDER_ID.equals(p.getOrderId())));
+                .upsert(eq(connection), argThat(p -> ORDER_ID.equals(p.getOrderId())));
+    }
+
+    @Test
+    void addOrderPosition_orderPlacedConcurrently() {
+        // given
+        final var order = buildOrder(OrderStatus.CREATED);
+
+        // when
+        when(productService.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION))
+                .thenReturn(Uni.createFrom().item(BigDecimal.TEN));
+        when(orderDao.findById(connection, ORDER_ID))
+                .thenReturn(Uni.createFrom().item(order));
+        when(orderDao.touch(connection, ORDER_ID, OrderStatus.CREATED))
+                .thenReturn(Uni.createFrom().item(false));
+        final var subscriber = service.addOrderPosition(ORDER_ID, PRODUCT_CODE, QUANTITY).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        final var failure = (OrderCanNotBeChangedException) subscriber
+                .assertFailedWith(OrderCanNotBeChangedException.class)
+                .getFailure();
+        assertEquals(ORDER_ID, failure.getOrderId());
+
+        verify(positionDao, never())
+                .upsert(eq(connection), any(OrderPosition.class));
+    }
+
+    @Test
+    void addOrderPositions_success() {
+        // given
+        final var order = buildOrder(OrderStatus.CREATED);
+        final var otherProductCode = "PRODUCT2";
+        final var positions = List.of(
+                OrderPosition.builder().productCode(PRODUCT_CODE).quantity(QUANTITY).build(),
+                OrderPosition.builder().productCode(otherProductCode).quantity(1).build(),
+                OrderPosition.builder().productCode(PRODUCT_CODE).quantity(2).build());
+        final var positionIds = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+
+        // when
+        when(orderDao.findById(connection, ORDER_ID))
+                .thenReturn(Uni.createFrom().item(order));
+        when(productService.getProductPrices(Set.of(PRODUCT_CODE, otherProductCode), PricingFlow.ORDER_POSITION))
+                .thenReturn(Uni.createFrom().item(Map.of(PRODUCT_CODE, BigDecimal.TEN, otherProductCode, BigDecimal.ONE)));
+        when(positionDao.upsertAll(connection, positions))
+                .thenReturn(Uni.createFrom().item(positionIds));
+        final var subscriber = service.addOrderPositions(ORDER_ID, positions).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertItem(positionIds);
+        positions.forEach(position -> assertEquals(ORDER_ID, position.getOrderId()));
+        assertEquals(BigDecimal.TEN, positions.get(0).getPrice());
+        assertEquals(BigDecimal.ONE, positions.get(1).getPrice());
+
+        verify(orderDao, times(1))
+                .findById(connection, ORDER_ID);
+        verify(orderDao, times(1))
+                .touch(connection, ORDER_ID, OrderStatus.CREATED);
+        verify(productService, never())
+                .getProductPrice(anyString(), any(PricingFlow.class));
+        verify(positionDao, never())
+                .upsert(eq(connection), any(OrderPosition.class));
+    }
+
+    @Test
+    void addOrderPositions_orderCanNotBeChanged() {
+        // given
+        final var order = buildOrder(OrderStatus.PLACED);
+        final var positions = List.of(OrderPosition.builder().productCode(PRODUCT_CODE).quantity(QUANTITY).build());
+
+        // when
+        when(orderDao.findById(connection, ORDER_ID))
+                .thenReturn(Uni.createFrom().item(order));
+        final var subscriber = service.addOrderPositions(ORDER_ID, positions).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        final var failure = (OrderCanNotBeChangedException) subscriber
+                .assertFailedWith(OrderCanNotBeChangedException.class)
+                .getFailure();
+        assertEquals(ORDER_ID, failure.getOrderId());
+
+        verify(positionDao, never())
+                .upsertAll(eq(connection), anyList());
     }
 
     @Test
@@ -308,9 +796,9 @@ public class OrderServiceImplTest {
         final var order = buildOrder(OrderStatus.CREATED);
 
         // when
-        when(positionDao.findById(pool, POSITION_ID))
+        when(positionDao.findById(connection, POSITION_ID))
                 .thenReturn(Uni.createFrom().item(position));
-        when(orderDao.findById(pool, ORDER_ID))
+        when(orderDao.findById(connection, ORDER_ID))
                 .thenReturn(Uni.createFrom().item(order));
         final var subscriber = service.removeOrderPosition(POSITION_ID).subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
@@ -318,20 +806,22 @@ public class OrderServiceImplTest {
         // then
         subscriber.assertCompleted();
         verify(positionDao, times(1))
-                .deleteById(pool, POSITION_ID);
+                .deleteById(connection, POSITION_ID);
+        verify(orderDao, times(1))
+                .touch(connection, ORDER_ID, OrderStatus.CREATED);
     }
 
     @Test
     void removeOrderPosition_positionNotFound() {
         // when
-        when(positionDao.findById(pool, POSITION_ID))
+        when(positionDao.findById(connection, POSITION_ID))
                 .thenReturn(Uni.createFrom().failure(new NoSuchElementException()));
         final var subscriber = service.removeOrderPosition(POSITION_ID).subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
 
         // then
         subscriber.assertFailedWith(OrderPositionNotFoundException.class);
-        verify(positionDao, never()).deleteById(pool, POSITION_ID);
+        verify(positionDao, never()).deleteById(connection, POSITION_ID);
     }
 
     @Test
@@ -341,9 +831,9 @@ public class OrderServiceImplTest {
         final var order = buildOrder(OrderStatus.PLACED);
 
         // when
-        when(positionDao.findById(pool, POSITION_ID))
+        when(positionDao.findById(connection, POSITION_ID))
                 .thenReturn(Uni.createFrom().item(position));
-        when(orderDao.findById(pool, ORDER_ID))
+        when(orderDao.findById(connection, ORDER_ID))
                 .thenReturn(Uni.createFrom().item(order));
         final var subscriber = service.removeOrderPosition(POSITION_ID).subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
@@ -355,42 +845,49 @@ public class OrderServiceImplTest {
         assertEquals(ORDER_ID, failure.getOrderId());
 
         verify(positionDao, never())
-                .insert(eq(pool), argThat(p -> ORDER_ID.equals(p.getOrderId())));
+                .upsert(eq(connection), argThat(p -> ORDER_ID.equals(p.getOrderId())));
     }
 
     @Test
     void placeOrder_success() {
         // given
         final var productPrice = BigDecimal.TEN;
-        final var positions = List.of(buildPosition());
+        final var positions = List.of(buildPosition(UUID.randomUUID()), buildPosition(UUID.randomUUID()));
         final var order = buildOrder(OrderStatus.CREATED);
 
         // when
-        when(orderDao.findById(pool, ORDER_ID))
+        when(orderDao.findById(connection, ORDER_ID))
                 .thenReturn(Uni.createFrom().item(order));
-        when(positionDao.findAllByOrderId(pool, ORDER_ID))
+        when(positionDao.findAllByOrderId(connection, ORDER_ID))
                 .thenReturn(Uni.createFrom().item(positions));
-        when(productService.getProductPrice(PRODUCT_CODE))
-                .thenReturn(Uni.createFrom().item(productPrice));
+        when(productService.getProductPrices(Set.of(PRODUCT_CODE), PricingFlow.ORDER_PLACEMENT))
+                .thenReturn(Uni.createFrom().item(Map.of(PRODUCT_CODE, productPrice)));
+        when(positionDao.updatePrices(eq(connection), anyMap()))
+                .thenReturn(Uni.createFrom().voidItem());
         final var subscriber = service.placeOrder(ORDER_ID).subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
 
         // then
         subscriber.assertCompleted();
 
+        verify(productService, times(1))
+                .getProductPrices(Set.of(PRODUCT_CODE), PricingFlow.ORDER_PLACEMENT);
         verify(positionDao, times(1))
-                .updatePriceById(pool, positions.get(0).getId(), productPrice);
-        verify(statusChangeDao, times(1))
-                .insert(eq(pool), eq(ORDER_ID),
-                        argThat(statusChange -> OrderStatus.PLACED.equals(statusChange.getStatus())));
+                .updatePrices(connection, Map.of(positions.get(0).getId(), productPrice,
+                        positions.get(1).getId(), productPrice));
         verify(orderDao, times(1))
-                .updateStatus(pool, ORDER_ID, OrderStatus.PLACED);
+                .transitionStatus(eq(connection), eq(ORDER_ID), eq(USERNAME), eq(0L), eq(Set.of(OrderStatus.CREATED)),
+                        argThat(statusChange -> OrderStatus.PLACED.equals(statusChange.getStatus())));
+        verify(orderDao, never())
+                .findById(eq(pool), any(UUID.class));
+        verify(positionDao, never())
+                .findAllByOrderId(eq(pool), any(UUID.class));
     }
 
     @Test
     void placeOrder_notFound() {
         // when
-        when(orderDao.findById(eq(pool), any(UUID.class)))
+        when(orderDao.findById(eq(connection), any(UUID.class)))
                 .thenReturn(Uni.createFrom().failure(new NoSuchElementException("order not found")));
         final var subscriber = service.placeOrder(ORDER_ID).subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
@@ -409,7 +906,7 @@ public class OrderServiceImplTest {
         order.setUserName("other-user");
 
         // when
-        when(orderDao.findById(eq(pool), eq(ORDER_ID)))
+        when(orderDao.findById(eq(connection), eq(ORDER_ID)))
                 .thenReturn(Uni.createFrom().item(order));
         final var subscriber = service.placeOrder(ORDER_ID).subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
@@ -427,7 +924,7 @@ public class OrderServiceImplTest {
         final var order = buildOrder(OrderStatus.PLACED);
 
         // when
-        when(orderDao.findById(eq(pool), eq(ORDER_ID)))
+        when(orderDao.findById(eq(connection), eq(ORDER_ID)))
                 .thenReturn(Uni.createFrom().item(order));
         final var subscriber = service.placeOrder(ORDER_ID).subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
@@ -446,11 +943,11 @@ public class OrderServiceImplTest {
         final var order = buildOrder(OrderStatus.CREATED);
 
         // when
-        when(orderDao.findById(eq(pool), eq(ORDER_ID)))
+        when(orderDao.findById(eq(connection), eq(ORDER_ID)))
                 .thenReturn(Uni.createFrom().item(order));
-        when(positionDao.findAllByOrderId(pool, ORDER_ID))
+        when(positionDao.findAllByOrderId(connection, ORDER_ID))
                 .thenReturn(Uni.createFrom().item(positions));
-        when(productService.getProductPrice(PRODUCT_CODE))
+        when(productService.getProductPrices(Set.of(PRODUCT_CODE), PricingFlow.ORDER_PLACEMENT))
                 .thenReturn(Uni.createFrom().failure(new ProductNotAvailableException(PRODUCT_CODE)));
         final var subscriber = service.placeOrder(ORDER_ID).subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
@@ -465,17 +962,15 @@ public class OrderServiceImplTest {
     @Test
     void payOrder_success() {
         // given
-        final var positions = List.of(buildPosition(), buildPosition());
+        final var positions = List.of(buildPosition(UUID.randomUUID()), buildPosition(UUID.randomUUID()));
         final var order = buildOrder(OrderStatus.PLACED);
         final var billingOperationId = UUID.randomUUID();
 
         // when
-        when(orderDao.findById(pool, ORDER_ID))
+        when(orderDao.findById(connection, ORDER_ID))
                 .thenReturn(Uni.createFrom().item(order));
-        when(positionDao.findAllByOrderId(pool, ORDER_ID))
+        when(positionDao.findAllByOrderId(connection, ORDER_ID))
                 .thenReturn(Uni.createFrom().item(positions));
-        when(licenseService.createLicense(PRODUCT_CODE))
-                .thenReturn(Uni.createFrom().item(UUID.randomUUID()));
         when(billingService.withdrawFunds(any(BigDecimal.class), anyString()))
                 .thenReturn(Uni.createFrom().item(billingOperationId));
         final var subscriber = service.payOrder(ORDER_ID).subscribe()
@@ -487,29 +982,42 @@ public class OrderServiceImplTest {
         // Saga: workloads
         verify(billingService, times(1))
                 .withdrawFunds(eq(OrderServiceImpl.calculateTotal(positions)), anyString());
-        verify(licenseService, times(2))
-                .createLicense(PRODUCT_CODE);
+        verify(licenseService, times(1))
+                .createLicenses(argThat(requests -> requests.size() == 2));
+        verify(licenseService, never())
+                .createLicense(anyString());
+        assertEquals(2, licenseService.getLicenses().size());
+
+        // Saga log
+        verify(sagaLog, times(1))
+                .start(any(UUID.class), eq(OrderServiceImpl.PAY_ORDER_SAGA), eq(ORDER_ID));
+        verify(sagaLog, times(1))
+                .logStep(any(UUID.class), eq(OrderServiceImpl.WITHDRAW_FUNDS_STEP), eq(SagaStepEvent.SUCCEEDED),
+                        eq(List.of(billingOperationId)));
+        verify(sagaLog, times(1))
+                .logStep(any(UUID.class), eq(OrderServiceImpl.CREATE_LICENSES_STEP), eq(SagaStepEvent.SUCCEEDED),
+                        argThat(licenseIds -> licenseIds.size() == 2));
+        verify(sagaLog, times(1))
+                .finish(any(UUID.class), eq(SagaStatus.COMPLETED));
 
-        verify(statusChangeDao, times(1))
-                .insert(eq(pool), eq(ORDER_ID),
-                        argThat(statusChange -> OrderStatus.COMPLETED.equals(statusChange.getStatus())));
         verify(orderDao, times(1))
-                .updateStatus(pool, ORDER_ID, OrderStatus.COMPLETED);
+                .updateStatus(connection, ORDER_ID, 0L, OrderStatus.PLACED, OrderStatus.PLACED);
+        verify(orderDao, times(1))
+                .transitionStatus(eq(connection), eq(ORDER_ID), eq(USERNAME), eq(1L), eq(Set.of(OrderStatus.PLACED)),
+                        argThat(statusChange -> OrderStatus.COMPLETED.equals(statusChange.getStatus())));
     }
 
     @Test
     void payOrder_insufficentFunds() {
         // given
-        final var positions = List.of(buildPosition(), buildPosition());
+        final var positions = List.of(buildPosition(UUID.randomUUID()), buildPosition(UUID.randomUUID()));
         final var order = buildOrder(OrderStatus.PLACED);
 
         // when
-        when(orderDao.findById(pool, ORDER_ID))
+        when(orderDao.findById(connection, ORDER_ID))
                 .thenReturn(Uni.createFrom().item(order));
-        when(positionDao.findAllByOrderId(pool, ORDER_ID))
+        when(positionDao.findAllByOrderId(connection, ORDER_ID))
                 .thenReturn(Uni.createFrom().item(positions));
-        when(licenseService.createLicense(PRODUCT_CODE))
-                .thenReturn(Uni.createFrom().item(UUID.randomUUID()));
         when(billingService.withdrawFunds(any(BigDecimal.class), anyString()))
                 .thenReturn(Uni.createFrom().failure(new InsufficentFundsException("insufficent funds")));
         final var subscriber = service.payOrder(ORDER_ID).subscribe()
@@ -521,23 +1029,138 @@ public class OrderServiceImplTest {
         // Saga: workloads
         verify(billingService, times(1))
                 .withdrawFunds(eq(OrderServiceImpl.calculateTotal(positions)), anyString());
-        verify(licenseService, times(2))
-                .createLicense(PRODUCT_CODE);
+        verify(licenseService, times(1))
+                .createLicenses(anyList());
         // Saga: compensation
-        verify(licenseService, times(2))
+        verify(licenseService, times(1))
+                .deleteLicenses(argThat(licenseIds -> licenseIds.size() == 2));
+        verify(licenseService, never())
                 .deleteLicense(any(UUID.class));
+        assertEquals(0, licenseService.getLicenses().size());
+
+        // Saga log
+        verify(sagaLog, times(1))
+                .logStep(any(UUID.class), eq(OrderServiceImpl.WITHDRAW_FUNDS_STEP), eq(SagaStepEvent.FAILED),
+                        anyList());
+        verify(sagaLog, times(1))
+                .logStep(any(UUID.class), eq(OrderServiceImpl.CREATE_LICENSES_STEP), eq(SagaStepEvent.COMPENSATED),
+                        anyList());
+        verify(sagaLog, times(1))
+                .finish(any(UUID.class), eq(SagaStatus.COMPENSATED));
+        verify(sagaLog, never())
+                .finish(any(UUID.class), eq(SagaStatus.COMPLETED));
 
-        verify(statusChangeDao, never())
-                .insert(eq(pool), eq(ORDER_ID),
+        verify(orderDao, never())
+                .transitionStatus(eq(connection), eq(ORDER_ID), anyString(), nullable(Long.class), anySet(),
                         argThat(statusChange -> OrderStatus.COMPLETED.equals(statusChange.getStatus())));
+    }
+
+    @Test
+    void payOrder_withdrawTimedOut() {
+        // given
+        final var positions = List.of(buildPosition(UUID.randomUUID()), buildPosition(UUID.randomUUID()));
+        final var order = buildOrder(OrderStatus.PLACED);
+
+        // when
+        when(orderDao.findById(connection, ORDER_ID))
+                .thenReturn(Uni.createFrom().item(order));
+        when(positionDao.findAllByOrderId(connection, ORDER_ID))
+                .thenReturn(Uni.createFrom().item(positions));
+        when(billingService.withdrawFunds(any(BigDecimal.class), anyString()))
+                .thenReturn(Uni.createFrom().failure(new ClientUnavailableException("billing-service",
+                        Reason.TIMEOUT)));
+        final var subscriber = service.payOrder(ORDER_ID).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertFailedWith(ClientUnavailableException.class);
+
+        // Saga: compensation of the licenses only, the withdrawal may have been made
+        verify(licenseService, times(1))
+                .deleteLicenses(argThat(licenseIds -> licenseIds.size() == 2));
+        verify(billingService, never())
+                .cancelOperation(any(UUID.class));
+
+        // Saga log: left running for recovery
+        verify(sagaLog, never())
+                .logStep(any(UUID.class), eq(OrderServiceImpl.WITHDRAW_FUNDS_STEP), eq(SagaStepEvent.FAILED),
+                        anyList());
+        verify(sagaLog, never())
+                .finish(any(UUID.class), any(SagaStatus.class));
+
         verify(orderDao, never())
-                .updateStatus(pool, ORDER_ID, OrderStatus.COMPLETED);
+                .transitionStatus(eq(connection), eq(ORDER_ID), anyString(), nullable(Long.class), anySet(),
+                        argThat(statusChange -> OrderStatus.COMPLETED.equals(statusChange.getStatus())));
+    }
+
+    @Test
+    void payOrder_withdrawOutcomeNotLogged() {
+        // given
+        final var positions = List.of(buildPosition(UUID.randomUUID()));
+        final var order = buildOrder(OrderStatus.PLACED);
+        final var billingOperationId = UUID.randomUUID();
+
+        // when
+        when(orderDao.findById(connection, ORDER_ID))
+                .thenReturn(Uni.createFrom().item(order));
+        when(positionDao.findAllByOrderId(connection, ORDER_ID))
+                .thenReturn(Uni.createFrom().item(positions));
+        when(billingService.withdrawFunds(any(BigDecimal.class), anyString()))
+                .thenReturn(Uni.createFrom().item(billingOperationId));
+        when(sagaLog.logStep(any(UUID.class), eq(OrderServiceImpl.WITHDRAW_FUNDS_STEP),
+                eq(SagaStepEvent.SUCCEEDED), anyList()))
+                .thenReturn(Uni.createFrom().failure(new IllegalStateException("saga log unavailable")));
+        final var subscriber = service.payOrder(ORDER_ID).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertFailedWith(IllegalStateException.class);
+
+        verify(billingService, never())
+                .cancelOperation(any(UUID.class));
+        verify(sagaLog, never())
+                .finish(any(UUID.class), any(SagaStatus.class));
+    }
+
+    @Test
+    void payOrder_licenseCreationFailed() {
+        // given
+        final var positions = List.of(buildPosition(UUID.randomUUID()), buildPosition(UUID.randomUUID()));
+        final var order = buildOrder(OrderStatus.PLACED);
+        final var billingOperationId = UUID.randomUUID();
+
+        // when
+        when(orderDao.findById(connection, ORDER_ID))
+                .thenReturn(Uni.createFrom().item(order));
+        when(positionDao.findAllByOrderId(connection, ORDER_ID))
+                .thenReturn(Uni.createFrom().item(positions));
+        doReturn(Uni.createFrom().failure(new IllegalStateException("license service failed")))
+                .when(licenseService).createLicenses(anyList());
+        when(billingService.withdrawFunds(any(BigDecimal.class), anyString()))
+                .thenReturn(Uni.createFrom().item(billingOperationId));
+        when(billingService.cancelOperation(billingOperationId))
+                .thenReturn(Uni.createFrom().voidItem());
+        final var subscriber = service.payOrder(ORDER_ID).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertFailedWith(IllegalStateException.class);
+
+        // Saga: compensation
+        verify(billingService, times(1))
+                .cancelOperation(billingOperationId);
+        verify(licenseService, never())
+                .deleteLicenses(anyList());
+
+        verify(orderDao, never())
+                .transitionStatus(eq(connection), eq(ORDER_ID), anyString(), nullable(Long.class), anySet(),
+                        argThat(statusChange -> OrderStatus.COMPLETED.equals(statusChange.getStatus())));
     }
 
     @Test
     void payOrder_notFound() {
         // when
-        when(orderDao.findById(eq(pool), any(UUID.class)))
+        when(orderDao.findById(eq(connection), any(UUID.class)))
                 .thenReturn(Uni.createFrom().failure(new NoSuchElementException("order not found")));
         final var subscriber = service.payOrder(ORDER_ID).subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
@@ -556,7 +1179,7 @@ public class OrderServiceImplTest {
         order.setUserName("other-user");
 
         // when
-        when(orderDao.findById(eq(pool), eq(ORDER_ID)))
+        when(orderDao.findById(eq(connection), eq(ORDER_ID)))
                 .thenReturn(Uni.createFrom().item(order));
         final var subscriber = service.payOrder(ORDER_ID).subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
@@ -574,7 +1197,7 @@ public class OrderServiceImplTest {
         final var order = buildOrder(OrderStatus.CREATED);
 
         // when
-        when(orderDao.findById(eq(pool), eq(ORDER_ID)))
+        when(orderDao.findById(eq(connection), eq(ORDER_ID)))
                 .thenReturn(Uni.createFrom().item(order));
         final var subscriber = service.payOrder(ORDER_ID).subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
@@ -587,30 +1210,76 @@ public class OrderServiceImplTest {
     }
 
     @Test
-    void cancelOrder_success() {
+    void payOrder_concurrentlyModified() {
         // given
-        final var order = buildOrder(OrderStatus.CREATED);
+        final var order = buildOrder(OrderStatus.PLACED);
 
         // when
-        when(orderDao.findById(pool, ORDER_ID))
+        when(orderDao.findById(connection, ORDER_ID))
                 .thenReturn(Uni.createFrom().item(order));
+        when(orderDao.updateStatus(connection, ORDER_ID, 0L, OrderStatus.PLACED, OrderStatus.PLACED))
+                .thenReturn(Uni.createFrom().failure(new OrderConcurrentlyModifiedException(ORDER_ID)));
+        final var subscriber = service.payOrder(ORDER_ID).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        final var failure = (OrderConcurrentlyModifiedException) subscriber
+                .assertFailedWith(OrderConcurrentlyModifiedException.class)
+                .getFailure();
+        assertEquals(ORDER_ID, failure.getOrderId());
+
+        verify(billingService, never())
+                .withdrawFunds(any(BigDecimal.class), anyString());
+        verify(sagaLog, never())
+                .start(any(UUID.class), anyString(), any(UUID.class));
+    }
+
+    @Test
+    void cancelOrder_success() {
+        // when
         final var subscriber = service.cancelOrder(ORDER_ID).subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
 
         // then
         subscriber.assertCompleted();
 
-        verify(statusChangeDao, times(1))
-                .insert(eq(pool), eq(ORDER_ID),
-                        argThat(statusChange -> OrderStatus.CANCELED.equals(statusChange.getStatus())));
         verify(orderDao, times(1))
-                .updateStatus(pool, ORDER_ID, OrderStatus.CANCELED);
+                .transitionStatus(eq(connection), eq(ORDER_ID), eq(USERNAME), isNull(), eq(Set.of(OrderStatus.CREATED)),
+                        argThat(statusChange -> OrderStatus.CANCELED.equals(statusChange.getStatus())));
+        verify(outboxDao, times(1))
+                .insert(eq(connection), eq(ORDER_ID),
+                        argThat(statusChange -> OrderStatus.CANCELED.equals(statusChange.getStatus())));
+        verify(orderDao, never())
+                .findById(eq(connection), any(UUID.class));
+    }
+
+    @Test
+    void cancelOrder_concurrentlyModified() {
+        // given
+        final var order = buildOrder(OrderStatus.CREATED);
+
+        // when
+        mockRejectedTransition();
+        when(orderDao.findById(connection, ORDER_ID))
+                .thenReturn(Uni.createFrom().item(order));
+        final var subscriber = service.cancelOrder(ORDER_ID).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        final var failure = (OrderConcurrentlyModifiedException) subscriber
+                .assertFailedWith(OrderConcurrentlyModifiedException.class)
+                .getFailure();
+        assertEquals(ORDER_ID, failure.getOrderId());
+
+        verify(outboxDao, never())
+                .insert(any(SqlConnection.class), any(UUID.class), any(OrderStatusChange.class));
     }
 
     @Test
     void cancelOrder_notFound() {
         // when
-        when(orderDao.findById(eq(pool), any(UUID.class)))
+        mockRejectedTransition();
+        when(orderDao.findById(eq(connection), any(UUID.class)))
                 .thenReturn(Uni.createFrom().failure(new NoSuchElementException("order not found")));
         final var subscriber = service.cancelOrder(ORDER_ID).subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
@@ -629,7 +1298,8 @@ public class OrderServiceImplTest {
         order.setUserName("other-user");
 
         // when
-        when(orderDao.findById(eq(pool), eq(ORDER_ID)))
+        mockRejectedTransition();
+        when(orderDao.findById(eq(connection), eq(ORDER_ID)))
                 .thenReturn(Uni.createFrom().item(order));
         final var subscriber = service.cancelOrder(ORDER_ID).subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
@@ -647,7 +1317,8 @@ public class OrderServiceImplTest {
         final var order = buildOrder(OrderStatus.PLACED);
 
         // when
-        when(orderDao.findById(eq(pool), eq(ORDER_ID)))
+        mockRejectedTransition();
+        when(orderDao.findById(eq(connection), eq(ORDER_ID)))
                 .thenReturn(Uni.createFrom().item(order));
         final var subscriber = service.cancelOrder(ORDER_ID).subscribe()
                 .withSubscriber(UniAssertSubscriber.create());
@@ -659,8 +1330,19 @@ public class OrderServiceImplTest {
         assertEquals(ORDER_ID, failure.getOrderId());
     }
 
+    private void mockRejectedTransition() {
+        when(orderDao.transitionStatus(any(SqlConnection.class), any(UUID.class), anyString(), nullable(Long.class),
+                anySet(), any(OrderStatusChange.class)))
+                .thenReturn(Uni.createFrom().item(false));
+    }
+
     private static OrderPosition buildPosition() {
+        return buildPosition(null);
+    }
+
+    private static OrderPosition buildPosition(UUID id) {
         return OrderPosition.builder()
+                .id(id)
                 .orderId(ORDER_ID)
                 .productCode(PRODUCT_CODE)
                 .quantity(QUANTITY)
@@ -668,6 +1350,19 @@ public class OrderServiceImplTest {
                 .build();
     }
 
+    private static OrderStatusEvent buildEvent(Long id, OrderStatus status) {
+        return buildEvent(ORDER_ID, id, status);
+    }
+
+    private static OrderStatusEvent buildEvent(UUID orderId, Long id, OrderStatus status) {
+        return OrderStatusEvent.builder()
+                .id(id)
+                .orderId(orderId)
+                .status(status)
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+
     private static Order buildOrder(OrderStatus status) {
         return Order.builder()
                 .id(ORDER_ID)
@@ -0,0 +1,147 @@
+package org.auwerk.otus.arch.orderservice.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+import javax.enterprise.inject.Instance;
+
+import org.auwerk.otus.arch.orderservice.dao.OutboxDao;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatus;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatusEvent;
+import org.auwerk.otus.arch.orderservice.service.OrderStatusEventSink;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.helpers.test.UniAssertSubscriber;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.SqlConnection;
+
+public class OutboxRelayTest {
+
+    private static final UUID ORDER_ID = UUID.randomUUID();
+
+    private final PgPool pool = mock(PgPool.class);
+    private final SqlConnection connection = mock(SqlConnection.class);
+    private final OutboxDao outboxDao = mock(OutboxDao.class);
+    private final InMemoryOrderStatusEventSink sink = new InMemoryOrderStatusEventSink();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OutboxRelay relay = new OutboxRelay();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void initRelay() {
+        sink.capacity = 10;
+
+        final Instance<OrderStatusEventSink> sinks = mock(Instance.class);
+        when(sinks.get()).thenReturn(sink);
+
+        relay.pool = pool;
+        relay.outboxDao = outboxDao;
+        relay.sinks = sinks;
+        relay.meterRegistry = meterRegistry;
+        relay.batchSize = 2;
+        relay.initRelay();
+    }
+
+    @BeforeEach
+    void mockTransaction() {
+        when(pool.withTransaction(any()))
+                .then(inv -> {
+                    final Function<SqlConnection, Uni<?>> f = inv.getArgument(0);
+                    return f.apply(connection);
+                });
+        when(outboxDao.deleteByIds(any(SqlConnection.class), anyList()))
+                .thenReturn(Uni.createFrom().voidItem());
+    }
+
+    @Test
+    void drainOutbox_success() {
+        // given
+        final var first = buildEvent(1L, OrderStatus.CREATED);
+        final var second = buildEvent(2L, OrderStatus.PLACED);
+        final var third = buildEvent(3L, OrderStatus.COMPLETED);
+
+        // when
+        when(outboxDao.tryLockRelay(connection))
+                .thenReturn(Uni.createFrom().item(true));
+        when(outboxDao.findOldest(connection, 2))
+                .thenReturn(Uni.createFrom().item(List.of(first, second)))
+                .thenReturn(Uni.createFrom().item(List.of(third)));
+        final var subscriber = relay.drainOutbox().subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertItem(3L);
+        assertEquals(List.of(first, second, third), sink.getEvents());
+
+        verify(outboxDao, times(1)).deleteByIds(connection, List.of(1L, 2L));
+        verify(outboxDao, times(1)).deleteByIds(connection, List.of(3L));
+        assertEquals(3.0, meterRegistry.get(OutboxRelay.PUBLISHED_METER).counter().count());
+        assertEquals(3L, meterRegistry.get(OutboxRelay.LAG_METER).timer().count());
+    }
+
+    @Test
+    void drainOutbox_lockedByOtherInstance() {
+        // when
+        when(outboxDao.tryLockRelay(connection))
+                .thenReturn(Uni.createFrom().item(false));
+        final var subscriber = relay.drainOutbox().subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertItem(0L);
+        assertTrue(sink.getEvents().isEmpty());
+
+        verify(outboxDao, never()).findOldest(any(SqlConnection.class), anyInt());
+    }
+
+    @Test
+    void drainOutbox_sinkFailure() {
+        // given
+        final var failingSink = mock(OrderStatusEventSink.class);
+        @SuppressWarnings("unchecked")
+        final Instance<OrderStatusEventSink> sinks = mock(Instance.class);
+        when(sinks.get()).thenReturn(failingSink);
+        relay.sinks = sinks;
+        relay.initRelay();
+
+        // when
+        when(outboxDao.tryLockRelay(connection))
+                .thenReturn(Uni.createFrom().item(true));
+        when(outboxDao.findOldest(connection, 2))
+                .thenReturn(Uni.createFrom().item(List.of(buildEvent(1L, OrderStatus.CREATED))));
+        when(failingSink.publish(anyList()))
+                .thenReturn(Uni.createFrom().failure(new RuntimeException("sink unavailable")));
+        final var subscriber = relay.drainOutbox().subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertFailedWith(RuntimeException.class);
+
+        verify(outboxDao, never()).deleteByIds(any(SqlConnection.class), anyList());
+    }
+
+    private static OrderStatusEvent buildEvent(Long id, OrderStatus status) {
+        return OrderStatusEvent.builder()
+                .id(id)
+                .orderId(ORDER_ID)
+                .status(status)
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+}
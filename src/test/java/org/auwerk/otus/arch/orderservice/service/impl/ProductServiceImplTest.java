@@ -0,0 +1,364 @@
+package org.auwerk.otus.arch.orderservice.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+
+import org.auwerk.otus.arch.orderservice.client.ProductServiceClient;
+import org.auwerk.otus.arch.orderservice.client.dto.product.ProductDto;
+import org.auwerk.otus.arch.orderservice.domain.PricingFlow;
+import org.auwerk.otus.arch.orderservice.exception.ClientUnavailableException;
+import org.auwerk.otus.arch.orderservice.exception.ClientUnavailableException.Reason;
+import org.auwerk.otus.arch.orderservice.exception.ProductNotAvailableException;
+import org.auwerk.otus.arch.orderservice.metrics.MetricsRecorder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.helpers.test.UniAssertSubscriber;
+import io.smallrye.mutiny.operators.multi.processors.UnicastProcessor;
+
+public class ProductServiceImplTest {
+
+    private static final String PRODUCT_CODE = "PRODUCT1";
+    private static final String OTHER_PRODUCT_CODE = "PRODUCT2";
+
+    private final ProductServiceClient client = mock(ProductServiceClient.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ProductServiceImpl service = new ProductServiceImpl();
+
+    @BeforeEach
+    void initService() {
+        service.client = client;
+        service.meterRegistry = meterRegistry;
+        service.metrics = new MetricsRecorder(meterRegistry);
+        service.maxConcurrency = 2;
+        service.priceCacheTtl = Duration.ofMinutes(1);
+        service.priceCacheMaxSize = 100;
+        service.priceCacheBypassFlows = Set.of(PricingFlow.ORDER_PLACEMENT);
+        service.timeout = Duration.ofSeconds(1);
+        service.maxInFlight = 10;
+        service.circuitFailureThreshold = 5;
+        service.circuitOpenDuration = Duration.ofSeconds(10);
+        service.stalePriceMaxAge = Duration.ofMinutes(30);
+        service.stalePriceFlows = Set.of(PricingFlow.ORDER_POSITION);
+        service.init();
+    }
+
+    @Test
+    void getProductPrice_success() {
+        // when
+        when(client.getProductByCode(PRODUCT_CODE))
+                .thenReturn(Uni.createFrom().item(new ProductDto(true, BigDecimal.TEN)));
+        final var subscriber = service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertItem(BigDecimal.TEN);
+    }
+
+    @Test
+    void getProductPrice_productNotAvailable() {
+        // when
+        when(client.getProductByCode(PRODUCT_CODE))
+                .thenReturn(Uni.createFrom().item(new ProductDto(false, BigDecimal.TEN)));
+        final var subscriber = service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        final var failure = (ProductNotAvailableException) subscriber
+                .assertFailedWith(ProductNotAvailableException.class)
+                .getFailure();
+        assertEquals(PRODUCT_CODE, failure.getProductCode());
+    }
+
+    @Test
+    void getProductPrice_cached() {
+        // when
+        when(client.getProductByCode(PRODUCT_CODE))
+                .thenReturn(Uni.createFrom().item(new ProductDto(true, BigDecimal.TEN)));
+        service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(BigDecimal.TEN);
+        service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(BigDecimal.TEN);
+
+        // then
+        verify(client, times(1)).getProductByCode(PRODUCT_CODE);
+        assertEquals(1.0, meterRegistry.get("cache.gets")
+                .tags("cache", ProductServiceImpl.PRICE_CACHE_NAME, "result", "hit")
+                .functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets")
+                .tags("cache", ProductServiceImpl.PRICE_CACHE_NAME, "result", "miss")
+                .functionCounter().count());
+    }
+
+    @Test
+    void getProductPrice_concurrentMissesCoalesced() {
+        // given
+        final var response = UnicastProcessor.<ProductDto>create();
+
+        // when
+        when(client.getProductByCode(PRODUCT_CODE))
+                .thenReturn(response.toUni());
+        final var firstSubscriber = service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+        final var secondSubscriber = service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+        response.onNext(new ProductDto(true, BigDecimal.TEN));
+
+        // then
+        firstSubscriber.assertItem(BigDecimal.TEN);
+        secondSubscriber.assertItem(BigDecimal.TEN);
+        verify(client, times(1)).getProductByCode(PRODUCT_CODE);
+    }
+
+    @Test
+    void getProductPrice_cancelledCallerDoesNotCancelSharedLookup() {
+        // given
+        final var lookup = new CompletableFuture<BigDecimal>();
+        service.priceCache.put(PRODUCT_CODE, lookup);
+
+        // when
+        final var cancelledSubscriber = service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+        final var subscriber = service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+        cancelledSubscriber.cancel();
+        lookup.complete(BigDecimal.TEN);
+
+        // then
+        subscriber.assertItem(BigDecimal.TEN);
+        assertFalse(lookup.isCancelled());
+        verify(client, never()).getProductByCode(PRODUCT_CODE);
+    }
+
+    @Test
+    void getProductPrice_failureNotCached() {
+        // when
+        when(client.getProductByCode(PRODUCT_CODE))
+                .thenReturn(Uni.createFrom().item(new ProductDto(false, BigDecimal.TEN)))
+                .thenReturn(Uni.createFrom().item(new ProductDto(true, BigDecimal.TEN)));
+        service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertFailedWith(ProductNotAvailableException.class);
+        service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(BigDecimal.TEN);
+
+        // then
+        verify(client, times(2)).getProductByCode(PRODUCT_CODE);
+    }
+
+    @Test
+    void getProductPrice_bypassFlowRefreshesCache() {
+        // when
+        when(client.getProductByCode(PRODUCT_CODE))
+                .thenReturn(Uni.createFrom().item(new ProductDto(true, BigDecimal.ONE)))
+                .thenReturn(Uni.createFrom().item(new ProductDto(true, BigDecimal.TEN)));
+        service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(BigDecimal.ONE);
+        service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_PLACEMENT).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(BigDecimal.TEN);
+        service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(BigDecimal.TEN);
+
+        // then
+        verify(client, times(2)).getProductByCode(PRODUCT_CODE);
+    }
+
+    @Test
+    void getProductPrice_livePriceServedWhileServiceUp() {
+        // when
+        when(client.getProductByCode(PRODUCT_CODE))
+                .thenReturn(Uni.createFrom().item(new ProductDto(true, BigDecimal.ONE)))
+                .thenReturn(Uni.createFrom().item(new ProductDto(true, BigDecimal.TEN)));
+        service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(BigDecimal.ONE);
+        service.priceCache.synchronous().invalidateAll();
+        final var subscriber = service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertItem(BigDecimal.TEN);
+        verify(client, times(2)).getProductByCode(PRODUCT_CODE);
+    }
+
+    @Test
+    void getProductPrice_staleServedDuringOutage() {
+        // when
+        when(client.getProductByCode(PRODUCT_CODE))
+                .thenReturn(Uni.createFrom().item(new ProductDto(true, BigDecimal.TEN)))
+                .thenReturn(Uni.createFrom().failure(new ProcessingException("connection refused")));
+        service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(BigDecimal.TEN);
+        service.priceCache.synchronous().invalidateAll();
+        final var subscriber = service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertItem(BigDecimal.TEN);
+        assertEquals(1.0, meterRegistry.get("cache.gets")
+                .tags("cache", ProductServiceImpl.PRICE_SNAPSHOT_CACHE_NAME, "result", "hit")
+                .functionCounter().count());
+    }
+
+    @Test
+    void getProductPrice_staleServedWhileCircuitOpen() {
+        // when
+        when(client.getProductByCode(PRODUCT_CODE))
+                .thenReturn(Uni.createFrom().item(new ProductDto(true, BigDecimal.TEN)))
+                .thenReturn(Uni.createFrom().failure(new ClientUnavailableException("product-service",
+                        Reason.CIRCUIT_OPEN)));
+        service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(BigDecimal.TEN);
+        service.priceCache.synchronous().invalidateAll();
+        final var subscriber = service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertItem(BigDecimal.TEN);
+    }
+
+    @Test
+    void getProductPrice_staleNotServedOnServiceError() {
+        // when
+        when(client.getProductByCode(PRODUCT_CODE))
+                .thenReturn(Uni.createFrom().item(new ProductDto(true, BigDecimal.TEN)))
+                .thenReturn(Uni.createFrom().failure(new WebApplicationException(400)));
+        service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(BigDecimal.TEN);
+        service.priceCache.synchronous().invalidateAll();
+        final var subscriber = service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertFailedWith(WebApplicationException.class);
+    }
+
+    @Test
+    void getProductPrice_staleNotAllowedForPlacement() {
+        // when
+        when(client.getProductByCode(PRODUCT_CODE))
+                .thenReturn(Uni.createFrom().item(new ProductDto(true, BigDecimal.TEN)))
+                .thenReturn(Uni.createFrom().failure(new ProcessingException("connection refused")));
+        service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(BigDecimal.TEN);
+        final var subscriber = service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_PLACEMENT).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertFailedWith(ProcessingException.class);
+    }
+
+    @Test
+    void getProductPrice_staleAllowedForPlacement() {
+        // given
+        service.stalePriceFlows = Set.of(PricingFlow.ORDER_POSITION, PricingFlow.ORDER_PLACEMENT);
+
+        // when
+        when(client.getProductByCode(PRODUCT_CODE))
+                .thenReturn(Uni.createFrom().item(new ProductDto(true, BigDecimal.TEN)))
+                .thenReturn(Uni.createFrom().failure(new ProcessingException("connection refused")));
+        service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_PLACEMENT).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(BigDecimal.TEN);
+        final var subscriber = service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_PLACEMENT).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertItem(BigDecimal.TEN);
+    }
+
+    @Test
+    void getProductPrice_unavailableProductNotServedStale() {
+        // when
+        when(client.getProductByCode(PRODUCT_CODE))
+                .thenReturn(Uni.createFrom().item(new ProductDto(true, BigDecimal.TEN)))
+                .thenReturn(Uni.createFrom().item(new ProductDto(false, BigDecimal.TEN)));
+        service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertItem(BigDecimal.TEN);
+        service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_PLACEMENT).subscribe()
+                .withSubscriber(UniAssertSubscriber.create())
+                .assertFailedWith(ProductNotAvailableException.class);
+        service.priceCache.synchronous().invalidateAll();
+        final var subscriber = service.getProductPrice(PRODUCT_CODE, PricingFlow.ORDER_POSITION).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertFailedWith(ProductNotAvailableException.class);
+    }
+
+    @Test
+    void getProductPrices_success() {
+        // when
+        when(client.getProductByCode(PRODUCT_CODE))
+                .thenReturn(Uni.createFrom().item(new ProductDto(true, BigDecimal.TEN)));
+        when(client.getProductByCode(OTHER_PRODUCT_CODE))
+                .thenReturn(Uni.createFrom().item(new ProductDto(true, BigDecimal.ONE)));
+        final var subscriber = service
+                .getProductPrices(Set.of(PRODUCT_CODE, OTHER_PRODUCT_CODE), PricingFlow.ORDER_PLACEMENT).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertItem(Map.of(PRODUCT_CODE, BigDecimal.TEN, OTHER_PRODUCT_CODE, BigDecimal.ONE));
+
+        verify(client, times(1)).getProductByCode(PRODUCT_CODE);
+        verify(client, times(1)).getProductByCode(OTHER_PRODUCT_CODE);
+    }
+
+    @Test
+    void getProductPrices_emptyCodes() {
+        // when
+        final var subscriber = service.getProductPrices(Set.of(), PricingFlow.ORDER_PLACEMENT).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertItem(Map.of());
+
+        verify(client, never()).getProductByCode(anyString());
+    }
+
+    @Test
+    void getProductPrices_productNotAvailable() {
+        // when
+        when(client.getProductByCode(PRODUCT_CODE))
+                .thenReturn(Uni.createFrom().item(new ProductDto(true, BigDecimal.TEN)));
+        when(client.getProductByCode(OTHER_PRODUCT_CODE))
+                .thenReturn(Uni.createFrom().item(new ProductDto(false, BigDecimal.ONE)));
+        final var subscriber = service
+                .getProductPrices(Set.of(PRODUCT_CODE, OTHER_PRODUCT_CODE), PricingFlow.ORDER_PLACEMENT).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        final var failure = (ProductNotAvailableException) subscriber
+                .assertFailedWith(ProductNotAvailableException.class)
+                .getFailure();
+        assertEquals(OTHER_PRODUCT_CODE, failure.getProductCode());
+    }
+}
@@ -0,0 +1,100 @@
+package org.auwerk.otus.arch.orderservice.service.impl;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.auwerk.otus.arch.orderservice.dao.SagaLogDao;
+import org.auwerk.otus.arch.orderservice.domain.SagaExecution;
+import org.auwerk.otus.arch.orderservice.domain.SagaStatus;
+import org.auwerk.otus.arch.orderservice.domain.SagaStepEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.helpers.test.UniAssertSubscriber;
+import io.smallrye.mutiny.operators.multi.processors.UnicastProcessor;
+import io.vertx.mutiny.pgclient.PgPool;
+
+public class SagaLogServiceImplTest {
+
+    private static final UUID SAGA_ID = UUID.randomUUID();
+    private static final UUID ORDER_ID = UUID.randomUUID();
+    private static final String STEP = "step";
+
+    private final PgPool pool = mock(PgPool.class);
+    private final SagaLogDao sagaLogDao = mock(SagaLogDao.class);
+    private final SagaLogServiceImpl service = new SagaLogServiceImpl();
+
+    @BeforeEach
+    void initService() {
+        service.pool = pool;
+        service.sagaLogDao = sagaLogDao;
+        service.maxBatchSize = 10;
+    }
+
+    @Test
+    void start_success() {
+        // when
+        when(sagaLogDao.insertExecution(eq(pool), any(SagaExecution.class)))
+                .thenReturn(Uni.createFrom().voidItem());
+        final var subscriber = service.start(SAGA_ID, "saga", ORDER_ID).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertCompleted();
+
+        verify(sagaLogDao, times(1))
+                .insertExecution(eq(pool), argThat(execution -> SAGA_ID.equals(execution.getId())
+                        && ORDER_ID.equals(execution.getOrderId())
+                        && SagaStatus.RUNNING.equals(execution.getStatus())));
+    }
+
+    @Test
+    void logStep_concurrentStepsBatched() {
+        // given
+        final var firstBatch = UnicastProcessor.<Void>create();
+
+        // when
+        when(sagaLogDao.insertSteps(eq(pool), any()))
+                .thenReturn(firstBatch.toUni())
+                .thenReturn(Uni.createFrom().voidItem());
+        final var firstSubscriber = service.logStep(SAGA_ID, STEP, SagaStepEvent.STARTED, List.of()).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+        final var secondSubscriber = service.logStep(SAGA_ID, STEP, SagaStepEvent.SUCCEEDED, List.of()).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+        final var thirdSubscriber = service.logStep(SAGA_ID, STEP, SagaStepEvent.COMPENSATED, List.of()).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+        secondSubscriber.assertNotTerminated();
+        firstBatch.onComplete();
+
+        // then
+        firstSubscriber.assertCompleted();
+        secondSubscriber.assertCompleted();
+        thirdSubscriber.assertCompleted();
+
+        verify(sagaLogDao, times(1))
+                .insertSteps(eq(pool), argThat(steps -> steps.size() == 1));
+        verify(sagaLogDao, times(1))
+                .insertSteps(eq(pool), argThat(steps -> steps.size() == 2));
+    }
+
+    @Test
+    void logStep_failure() {
+        // when
+        when(sagaLogDao.insertSteps(eq(pool), any()))
+                .thenReturn(Uni.createFrom().failure(new IllegalStateException()));
+        final var subscriber = service.logStep(SAGA_ID, STEP, SagaStepEvent.STARTED, List.of()).subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertFailedWith(IllegalStateException.class);
+    }
+}
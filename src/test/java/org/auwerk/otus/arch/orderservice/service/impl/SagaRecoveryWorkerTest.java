@@ -0,0 +1,255 @@
+package org.auwerk.otus.arch.orderservice.service.impl;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+
+import org.auwerk.otus.arch.orderservice.dao.OrderDao;
+import org.auwerk.otus.arch.orderservice.dao.OrderStatusChangeDao;
+import org.auwerk.otus.arch.orderservice.dao.OutboxDao;
+import org.auwerk.otus.arch.orderservice.dao.SagaLogDao;
+import org.auwerk.otus.arch.orderservice.domain.Order;
+import org.auwerk.otus.arch.orderservice.domain.OrderStatus;
+import org.auwerk.otus.arch.orderservice.domain.SagaExecution;
+import org.auwerk.otus.arch.orderservice.domain.SagaStatus;
+import org.auwerk.otus.arch.orderservice.domain.SagaStep;
+import org.auwerk.otus.arch.orderservice.domain.SagaStepEvent;
+import org.auwerk.otus.arch.orderservice.service.BillingService;
+import org.auwerk.otus.arch.orderservice.service.LicenseService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.helpers.test.UniAssertSubscriber;
+import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.SqlConnection;
+
+public class SagaRecoveryWorkerTest {
+
+    private static final UUID SAGA_ID = UUID.randomUUID();
+    private static final UUID ORDER_ID = UUID.randomUUID();
+    private static final UUID OPERATION_ID = UUID.randomUUID();
+    private static final UUID LICENSE_ID = UUID.randomUUID();
+
+    private final PgPool pool = mock(PgPool.class);
+    private final SqlConnection connection = mock(SqlConnection.class);
+    private final SagaLogDao sagaLogDao = mock(SagaLogDao.class);
+    private final OrderDao orderDao = mock(OrderDao.class);
+    private final OrderStatusChangeDao statusChangeDao = mock(OrderStatusChangeDao.class);
+    private final OutboxDao outboxDao = mock(OutboxDao.class);
+    private final BillingService billingService = mock(BillingService.class);
+    private final LicenseService licenseService = mock(LicenseService.class);
+    private final SagaRecoveryWorker worker = new SagaRecoveryWorker();
+
+    @BeforeEach
+    void initWorker() {
+        final var orderCache = new OrderCache();
+        orderCache.meterRegistry = new SimpleMeterRegistry();
+        orderCache.ttl = Duration.ofMinutes(1);
+        orderCache.maxSize = 100;
+        orderCache.initCache();
+
+        worker.pool = pool;
+        worker.sagaLogDao = sagaLogDao;
+        worker.orderDao = orderDao;
+        worker.statusChangeDao = statusChangeDao;
+        worker.outboxDao = outboxDao;
+        worker.billingService = billingService;
+        worker.licenseService = licenseService;
+        worker.orderCache = orderCache;
+        worker.gracePeriod = Duration.ofMinutes(5);
+    }
+
+    @BeforeEach
+    void mockTransaction() {
+        when(pool.withTransaction(any()))
+                .then(inv -> {
+                    final Function<SqlConnection, Uni<?>> f = inv.getArgument(0);
+                    return f.apply(connection);
+                });
+        when(sagaLogDao.lockStaleExecution(eq(connection), any(LocalDateTime.class), anyList()))
+                .thenReturn(Uni.createFrom().item(Optional.of(SagaExecution.builder()
+                        .id(SAGA_ID)
+                        .orderId(ORDER_ID)
+                        .status(SagaStatus.RUNNING)
+                        .build())))
+                .thenReturn(Uni.createFrom().item(Optional.empty()));
+        when(sagaLogDao.updateExecutionStatus(eq(connection), eq(SAGA_ID), any(SagaStatus.class)))
+                .thenReturn(Uni.createFrom().voidItem());
+        when(sagaLogDao.insertSteps(eq(pool), anyList()))
+                .thenReturn(Uni.createFrom().voidItem());
+    }
+
+    @Test
+    void recoverStaleSagas_allStepsSucceeded() {
+        // when
+        mockSaga(OrderStatus.PLACED,
+                buildStep(OrderServiceImpl.WITHDRAW_FUNDS_STEP, SagaStepEvent.STARTED),
+                buildStep(OrderServiceImpl.WITHDRAW_FUNDS_STEP, SagaStepEvent.SUCCEEDED, OPERATION_ID),
+                buildStep(OrderServiceImpl.CREATE_LICENSES_STEP, SagaStepEvent.STARTED),
+                buildStep(OrderServiceImpl.CREATE_LICENSES_STEP, SagaStepEvent.SUCCEEDED, LICENSE_ID));
+        when(statusChangeDao.insert(eq(connection), eq(ORDER_ID), any()))
+                .thenReturn(Uni.createFrom().voidItem());
+        when(outboxDao.insert(eq(connection), eq(ORDER_ID), any()))
+                .thenReturn(Uni.createFrom().voidItem());
+        when(orderDao.updateStatus(connection, ORDER_ID, 0L, OrderStatus.PLACED, OrderStatus.COMPLETED))
+                .thenReturn(Uni.createFrom().voidItem());
+        final var subscriber = worker.recoverStaleSagas().subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertItem(1L);
+
+        verify(orderDao, times(1))
+                .updateStatus(connection, ORDER_ID, 0L, OrderStatus.PLACED, OrderStatus.COMPLETED);
+        verify(outboxDao, times(1))
+                .insert(eq(connection), eq(ORDER_ID),
+                        argThat(statusChange -> OrderStatus.COMPLETED.equals(statusChange.getStatus())));
+        verify(sagaLogDao, times(1))
+                .updateExecutionStatus(connection, SAGA_ID, SagaStatus.COMPLETED);
+        verify(billingService, never())
+                .cancelOperation(any());
+    }
+
+    @Test
+    void recoverStaleSagas_compensated() {
+        // when
+        mockSaga(OrderStatus.PLACED,
+                buildStep(OrderServiceImpl.WITHDRAW_FUNDS_STEP, SagaStepEvent.STARTED),
+                buildStep(OrderServiceImpl.WITHDRAW_FUNDS_STEP, SagaStepEvent.SUCCEEDED, OPERATION_ID));
+        when(billingService.cancelOperation(OPERATION_ID))
+                .thenReturn(Uni.createFrom().voidItem());
+        final var subscriber = worker.recoverStaleSagas().subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertItem(1L);
+
+        verify(billingService, times(1))
+                .cancelOperation(OPERATION_ID);
+        verify(sagaLogDao, times(1))
+                .insertSteps(eq(pool), argThat(steps -> steps.size() == 1
+                        && SagaStepEvent.COMPENSATED.equals(steps.get(0).getEvent())));
+        verify(sagaLogDao, times(1))
+                .updateExecutionStatus(connection, SAGA_ID, SagaStatus.COMPENSATED);
+        verify(orderDao, never())
+                .updateStatus(eq(connection), eq(ORDER_ID), anyLong(), any(OrderStatus.class),
+                        eq(OrderStatus.COMPLETED));
+    }
+
+    @Test
+    void recoverStaleSagas_outcomeUnknown() {
+        // when
+        mockSaga(OrderStatus.PLACED,
+                buildStep(OrderServiceImpl.WITHDRAW_FUNDS_STEP, SagaStepEvent.STARTED),
+                buildStep(OrderServiceImpl.CREATE_LICENSES_STEP, SagaStepEvent.STARTED),
+                buildStep(OrderServiceImpl.CREATE_LICENSES_STEP, SagaStepEvent.SUCCEEDED, LICENSE_ID));
+        when(licenseService.deleteLicenses(List.of(LICENSE_ID)))
+                .thenReturn(Uni.createFrom().voidItem());
+        final var subscriber = worker.recoverStaleSagas().subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertItem(1L);
+
+        verify(licenseService, times(1))
+                .deleteLicenses(List.of(LICENSE_ID));
+        verify(sagaLogDao, times(1))
+                .updateExecutionStatus(connection, SAGA_ID, SagaStatus.FAILED);
+    }
+
+    @Test
+    void recoverStaleSagas_stepRejected() {
+        // when
+        mockSaga(OrderStatus.PLACED,
+                buildStep(OrderServiceImpl.WITHDRAW_FUNDS_STEP, SagaStepEvent.STARTED),
+                buildStep(OrderServiceImpl.WITHDRAW_FUNDS_STEP, SagaStepEvent.FAILED),
+                buildStep(OrderServiceImpl.CREATE_LICENSES_STEP, SagaStepEvent.STARTED),
+                buildStep(OrderServiceImpl.CREATE_LICENSES_STEP, SagaStepEvent.SUCCEEDED, LICENSE_ID));
+        when(licenseService.deleteLicenses(List.of(LICENSE_ID)))
+                .thenReturn(Uni.createFrom().voidItem());
+        final var subscriber = worker.recoverStaleSagas().subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertItem(1L);
+
+        verify(licenseService, times(1))
+                .deleteLicenses(List.of(LICENSE_ID));
+        verify(sagaLogDao, times(1))
+                .updateExecutionStatus(connection, SAGA_ID, SagaStatus.COMPENSATED);
+    }
+
+    @Test
+    void recoverStaleSagas_orderAlreadyCompleted() {
+        // when
+        mockSaga(OrderStatus.COMPLETED,
+                buildStep(OrderServiceImpl.WITHDRAW_FUNDS_STEP, SagaStepEvent.SUCCEEDED, OPERATION_ID),
+                buildStep(OrderServiceImpl.CREATE_LICENSES_STEP, SagaStepEvent.SUCCEEDED, LICENSE_ID));
+        final var subscriber = worker.recoverStaleSagas().subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertItem(1L);
+
+        verify(sagaLogDao, times(1))
+                .updateExecutionStatus(connection, SAGA_ID, SagaStatus.COMPLETED);
+        verify(orderDao, never())
+                .updateStatus(eq(connection), eq(ORDER_ID), anyLong(), any(OrderStatus.class),
+                        eq(OrderStatus.COMPLETED));
+    }
+
+    @Test
+    void recoverStaleSagas_compensationFailed() {
+        // when
+        mockSaga(OrderStatus.PLACED,
+                buildStep(OrderServiceImpl.WITHDRAW_FUNDS_STEP, SagaStepEvent.SUCCEEDED, OPERATION_ID));
+        when(billingService.cancelOperation(OPERATION_ID))
+                .thenReturn(Uni.createFrom().failure(new IllegalStateException()));
+        final var subscriber = worker.recoverStaleSagas().subscribe()
+                .withSubscriber(UniAssertSubscriber.create());
+
+        // then
+        subscriber.assertItem(1L);
+
+        verify(sagaLogDao, times(1))
+                .lockStaleExecution(eq(connection), any(LocalDateTime.class), eq(List.of(SAGA_ID)));
+        verify(sagaLogDao, never())
+                .updateExecutionStatus(eq(connection), eq(SAGA_ID), any(SagaStatus.class));
+    }
+
+    private void mockSaga(OrderStatus orderStatus, SagaStep... steps) {
+        when(sagaLogDao.findStepsBySagaId(connection, SAGA_ID))
+                .thenReturn(Uni.createFrom().item(List.of(steps)));
+        when(orderDao.findById(connection, ORDER_ID))
+                .thenReturn(Uni.createFrom().item(Order.builder()
+                        .id(ORDER_ID)
+                        .status(orderStatus)
+                        .build()));
+    }
+
+    private static SagaStep buildStep(String step, SagaStepEvent event, UUID... resourceIds) {
+        return SagaStep.builder()
+                .sagaId(SAGA_ID)
+                .step(step)
+                .event(event)
+                .resourceIds(List.of(resourceIds))
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+}